@@ -0,0 +1,250 @@
+package frc.lib.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.structure.configBase;
+import frc.lib.structure.inputBase;
+import frc.lib.structure.requestBase;
+import frc.lib.structure.mechanisms.LinearMechanism;
+import frc.lib.structure.mechanisms.MechanismSystem;
+import frc.lib.structure.mechanisms.RotatingMechanism;
+import frc.lib.structure.mechanisms.SetPoint;
+import frc.lib.structure.physics.physicalProperties;
+
+/**
+ * Measures nanoseconds and bytes allocated per getFeedforward call, for the mechanisms against a
+ * replica of the SimpleMatrix implementation they replaced, and for the inverse dynamics of an
+ * elevator, arm and wrist MechanismSystem against a replica of the SimpleMatrix system pass it
+ * replaced (which used fixed coupling factors, so only its cost is comparable).
+ * Allocation is read from the thread's allocation counter (HotSpot).
+ * Run with ./gradlew feedforwardBenchmark
+ */
+public final class FeedforwardBenchmark {
+
+    private static final int WARMUP_CALLS = 2_000_000;
+    private static final int MEASURED_CALLS = 5_000_000;
+
+    // Results are summed here so the JIT cannot drop the calls
+    private static volatile double sink;
+
+    private FeedforwardBenchmark() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    public static void main(String... args) {
+        if (!HAL.initialize(500, 0)) {
+            throw new IllegalStateException("Failed to initialize the HAL");
+        }
+
+        physicalProperties armProperties = new physicalProperties(4.0,
+                new SimpleMatrix(3, 1, true, 0.3, 0.0, 0.05),
+                new SimpleMatrix(3, 3, true, 0.05, 0, 0, 0, 0.4, 0, 0, 0, 0.4), Optional.empty());
+        SimpleMatrix armAxis = new SimpleMatrix(3, 1, true, 0.0, 1.0, 0.0);
+        SimpleMatrix armPivot = new SimpleMatrix(3, 1, true, 0.0, 0.0, 0.0);
+        RotatingMechanism<configBase, inputBase, requestBase> arm =
+                new RotatingMechanism<>("BenchmarkArm", armProperties, armAxis, armPivot);
+        arm.setAngularVelocity(2.0);
+        arm.setAngularAcceleration(5.0);
+
+        physicalProperties elevatorProperties = new physicalProperties(10.0,
+                new SimpleMatrix(3, 1, true, 0.0, 0.0, 0.5),
+                new SimpleMatrix(3, 3, true, 1, 0, 0, 0, 1, 0, 0, 0, 1), Optional.empty());
+        SimpleMatrix elevatorAxis = new SimpleMatrix(3, 1, true, 0.0, 0.0, 1.0);
+        LinearMechanism<configBase, inputBase, requestBase> elevator = new LinearMechanism<>(
+                "BenchmarkElevator", elevatorProperties, elevatorAxis, new SimpleMatrix(3, 1));
+        elevator.setVelocity(1.0);
+        elevator.setAcceleration(3.0);
+
+        physicalProperties wristProperties = new physicalProperties(1.5,
+                new SimpleMatrix(3, 1, true, 0.75, 0.0, 0.05),
+                new SimpleMatrix(3, 3, true, 0.01, 0, 0, 0, 0.02, 0, 0, 0, 0.02), Optional.empty());
+        SimpleMatrix wristAxis = new SimpleMatrix(3, 1, true, 0.0, 1.0, 0.0);
+        SimpleMatrix wristPivot = new SimpleMatrix(3, 1, true, 0.6, 0.0, 0.05);
+        RotatingMechanism<configBase, inputBase, requestBase> wrist = new RotatingMechanism<>(
+                "BenchmarkWrist", wristProperties, wristAxis, wristPivot);
+
+        MechanismSystem system = new MechanismSystem("Benchmark");
+        system.addMechanism(elevator);
+        system.addMechanism(arm);
+        system.addMechanism(wrist);
+        system.setParentChildRelation("BenchmarkElevator", "BenchmarkArm");
+        system.setParentChildRelation("BenchmarkArm", "BenchmarkWrist");
+        Map<String, SetPoint> setpoints = Map.of(
+                "BenchmarkElevator", new SetPoint(0.5, 1.0, 3.0, 0.0),
+                "BenchmarkArm", new SetPoint(0.3, 2.0, 5.0, 0.0),
+                "BenchmarkWrist", new SetPoint(-0.4, -1.0, 2.0, 0.0));
+        SimpleMatrixSystem baseline = new SimpleMatrixSystem();
+        baseline.add("BenchmarkElevator", true, null,
+                () -> linearFeedforward(elevatorProperties, elevatorAxis, 1.0, 3.0));
+        baseline.add("BenchmarkArm", false, "BenchmarkElevator",
+                () -> rotatingFeedforward(armProperties, armAxis, armPivot, 2.0, 5.0));
+        baseline.add("BenchmarkWrist", false, "BenchmarkArm",
+                () -> rotatingFeedforward(wristProperties, wristAxis, wristPivot, -1.0, 2.0));
+
+        SimpleMatrix frame = new SimpleMatrix(3, 1);
+        System.out.printf("%-34s %12s %12s%n", "", "ns/call", "bytes/call");
+        measure("RotatingMechanism (SimpleMatrix)",
+                () -> rotatingFeedforward(armProperties, armAxis, armPivot, 2.0, 5.0).get(2, 0));
+        measure("RotatingMechanism", () -> arm.getFeedforward(frame).get(2, 0));
+        measure("LinearMechanism (SimpleMatrix)",
+                () -> linearFeedforward(elevatorProperties, elevatorAxis, 1.0, 3.0).get(2, 0));
+        measure("LinearMechanism", () -> elevator.getFeedforward(frame).get(2, 0));
+        measure("MechanismSystem (SimpleMatrix)",
+                () -> baseline.calculate(setpoints).get("BenchmarkArm").get(1, 0));
+        measure("MechanismSystem (3 joints, RNEA)",
+                () -> system.calculateSystemFeedforward(setpoints).get("BenchmarkArm").get(1, 0));
+
+        CommandScheduler.getInstance().unregisterSubsystem(arm, elevator, wrist);
+    }
+
+    private static void measure(String name, DoubleSupplier call) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        double sum = 0.0;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            sum += call.getAsDouble();
+        }
+
+        long startBytes = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            sum += call.getAsDouble();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(thread) - startBytes;
+        sink += sum;
+
+        System.out.printf("%-34s %12.1f %12.1f%n", name, (double) elapsed / MEASURED_CALLS,
+                (double) bytes / MEASURED_CALLS);
+    }
+
+    /**
+     * Replica of the SimpleMatrix implementation of RotatingMechanism.getFeedforward
+     */
+    private static SimpleMatrix rotatingFeedforward(physicalProperties properties, SimpleMatrix axis,
+            SimpleMatrix pivot, double angularVelocity, double angularAcceleration) {
+        SimpleMatrix gravity = new SimpleMatrix(3, 1, true, 0.0, 0.0, -9.81 * properties.mass);
+        SimpleMatrix gravityTorque = cross(properties.CG.minus(pivot), gravity);
+        SimpleMatrix inertiaTorque = properties.MOI.mult(axis.scale(angularAcceleration));
+        SimpleMatrix omega = axis.scale(angularVelocity);
+        SimpleMatrix coriolisTorque = cross(omega, properties.MOI.mult(omega));
+        return gravityTorque.plus(inertiaTorque).plus(coriolisTorque);
+    }
+
+    /**
+     * Replica of the SimpleMatrix implementation of LinearMechanism.getFeedforward
+     */
+    private static SimpleMatrix linearFeedforward(physicalProperties properties, SimpleMatrix axis,
+            double velocity, double acceleration) {
+        SimpleMatrix gravity = new SimpleMatrix(3, 1, true, 0.0, 0.0, -9.81 * properties.mass);
+        SimpleMatrix inertia = axis.scale(properties.mass * acceleration);
+        double frictionMagnitude = 0.1 * Math.abs(velocity);
+        SimpleMatrix friction;
+        if (velocity > 0) {
+            friction = axis.scale(-frictionMagnitude);
+        } else if (velocity < 0) {
+            friction = axis.scale(frictionMagnitude);
+        } else {
+            friction = new SimpleMatrix(3, 1, true, 0.0, 0.0, 0.0);
+        }
+        return gravity.plus(inertia).plus(friction);
+    }
+
+    private static SimpleMatrix cross(SimpleMatrix a, SimpleMatrix b) {
+        return new SimpleMatrix(3, 1, true, a.get(1, 0) * b.get(2, 0) - a.get(2, 0) * b.get(1, 0),
+                a.get(2, 0) * b.get(0, 0) - a.get(0, 0) * b.get(2, 0),
+                a.get(0, 0) * b.get(1, 0) - a.get(1, 0) * b.get(0, 0));
+    }
+
+    /**
+     * Replica of the SimpleMatrix implementation of MechanismSystem.calculateSystemFeedforward: a
+     * top-down pass that scales the parent motion into each child and a bottom-up pass that adds
+     * scaled child forces to the parent, allocating its maps and matrices on every call
+     */
+    private static final class SimpleMatrixSystem {
+        private final Map<String, Boolean> linear = new HashMap<>();
+        private final Map<String, Supplier<SimpleMatrix>> feedforwards = new HashMap<>();
+        private final Map<String, List<String>> children = new HashMap<>();
+        private String root;
+
+        void add(String name, boolean isLinear, String parent, Supplier<SimpleMatrix> feedforward) {
+            linear.put(name, isLinear);
+            feedforwards.put(name, feedforward);
+            if (parent == null) {
+                root = name;
+            } else {
+                children.computeIfAbsent(parent, k -> new ArrayList<>()).add(name);
+            }
+        }
+
+        Map<String, SimpleMatrix> calculate(Map<String, SetPoint> setpoints) {
+            Map<String, SimpleMatrix> forces = new HashMap<>();
+            Map<String, SetPoint> states = new HashMap<>(setpoints);
+            topDown(root, forces, states, new SimpleMatrix(3, 1));
+            bottomUp(root, forces, states);
+            return forces;
+        }
+
+        private void topDown(String name, Map<String, SimpleMatrix> forces,
+                Map<String, SetPoint> states, SimpleMatrix parentMotion) {
+            SimpleMatrix baseFeedforward = feedforwards.get(name).get();
+            for (String child : children.getOrDefault(name, new ArrayList<>())) {
+                if (states.containsKey(child)) {
+                    topDown(child, forces, states, parentMotion.plus(coupling(name, child, parentMotion)));
+                }
+            }
+            forces.put(name, baseFeedforward);
+        }
+
+        private SimpleMatrix bottomUp(String name, Map<String, SimpleMatrix> forces,
+                Map<String, SetPoint> states) {
+            SimpleMatrix total = forces.getOrDefault(name, new SimpleMatrix(3, 1));
+            SimpleMatrix reaction = new SimpleMatrix(3, 1);
+            for (String child : children.getOrDefault(name, new ArrayList<>())) {
+                if (states.containsKey(child)) {
+                    reaction = reaction.plus(reaction(name, child, bottomUp(child, forces, states)));
+                }
+            }
+            total = total.plus(reaction);
+            forces.put(name, total);
+            return total;
+        }
+
+        private SimpleMatrix coupling(String parent, String child, SimpleMatrix motion) {
+            boolean linearParent = linear.get(parent);
+            boolean linearChild = linear.get(child);
+            if (linearParent && linearChild) {
+                return motion.scale(0.5);
+            } else if (linearParent != linearChild) {
+                return new SimpleMatrix(3, 1, true, motion.get(0, 0) * 0.1, motion.get(1, 0) * 0.1,
+                        motion.get(2, 0) * 0.1);
+            }
+            return motion.scale(0.3);
+        }
+
+        private SimpleMatrix reaction(String parent, String child, SimpleMatrix childForce) {
+            boolean linearParent = linear.get(parent);
+            boolean linearChild = linear.get(child);
+            if (linearParent && linearChild) {
+                return childForce.scale(-1.0);
+            } else if (linearParent != linearChild) {
+                return new SimpleMatrix(3, 1, true, -childForce.get(0, 0) * 0.1,
+                        -childForce.get(1, 0) * 0.1, -childForce.get(2, 0) * 0.1);
+            }
+            return childForce.scale(-0.5);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package frc.lib.benchmarks;
+
+import java.util.Optional;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.structure.configBase;
+import frc.lib.structure.inputBase;
+import frc.lib.structure.requestBase;
+import frc.lib.structure.mechanisms.LinearMechanism;
+import frc.lib.structure.mechanisms.Mechanism;
+import frc.lib.structure.mechanisms.MechanismSystem;
+import frc.lib.structure.mechanisms.RotatingMechanism;
+import frc.lib.structure.motors.KrakenSimIO;
+import frc.lib.structure.motors.MotorConfig;
+import frc.lib.structure.motors.SimMotorWorld;
+import frc.lib.structure.physics.physicalProperties;
+
+/**
+ * Measures the cost of one MechanismSystem tick (state update, system feedforward, control and
+ * at-target check, with new setpoints for every joint through the handle API) for trees of
+ * increasing size: an elevator root with arms branching two per mechanism, one simulated motor
+ * each. The cost per mechanism should stay flat as the tree grows.
+ * Run with ./gradlew mechanismSystemBenchmark
+ */
+public final class MechanismSystemBenchmark {
+
+    private static final int[] TREE_SIZES = {3, 9, 27, 81};
+    private static final int WARMUP_MECHANISM_TICKS = 2_000_000;
+    private static final int MEASURED_MECHANISM_TICKS = 5_000_000;
+
+    private MechanismSystemBenchmark() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    public static void main(String... args) {
+        if (!HAL.initialize(500, 0)) {
+            throw new IllegalStateException("Failed to initialize the HAL");
+        }
+
+        System.out.printf("%10s %14s %18s%n", "mechanisms", "ns/tick", "ns/mechanism/tick");
+        for (int size : TREE_SIZES) {
+            measure(size);
+        }
+    }
+
+    private static void measure(int size) {
+        SimMotorWorld world = SimMotorWorld.manual(0.001);
+        MechanismSystem system = new MechanismSystem("Benchmark" + size);
+        Mechanism<?, ?, ?>[] mechanisms = new Mechanism<?, ?, ?>[size];
+
+        for (int i = 0; i < size; i++) {
+            String name = "Benchmark" + size + "_" + i;
+            Mechanism<configBase, inputBase, requestBase> mechanism;
+            if (i == 0) {
+                mechanism = new LinearMechanism<>(name, properties(10.0, 0.0, 0.5),
+                        new SimpleMatrix(3, 1, true, 0.0, 0.0, 1.0), new SimpleMatrix(3, 1));
+            } else {
+                // Each arm hangs off the end of its parent (0.5 m out along x per level)
+                double pivot = 0.5 * depth(i);
+                mechanism = new RotatingMechanism<>(name, properties(2.0, pivot + 0.25, 1.0),
+                        new SimpleMatrix(3, 1, true, 0.0, 1.0, 0.0),
+                        new SimpleMatrix(3, 1, true, pivot, 0.0, 1.0));
+            }
+            MotorConfig config = new MotorConfig(name + "Motor", i + 1, "rio");
+            config.kP = 40.0;
+            config.kD = 2.0;
+            config.kT = 1.0;
+            config.gearRatio = 50.0;
+            mechanism.registerMotor(new KrakenSimIO(config, world), config);
+
+            system.addMechanism(mechanism);
+            if (i > 0) {
+                system.setParentChildRelation("Benchmark" + size + "_" + (i - 1) / 2, name);
+            }
+            mechanisms[i] = mechanism;
+        }
+        system.freeze();
+        int[] handles = new int[size];
+        for (int i = 0; i < size; i++) {
+            handles[i] = system.getHandle(mechanisms[i].getName());
+        }
+
+        int warmupTicks = WARMUP_MECHANISM_TICKS / size;
+        int measuredTicks = MEASURED_MECHANISM_TICKS / size;
+        for (int i = 0; i < warmupTicks; i++) {
+            tick(system, handles, i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredTicks; i++) {
+            tick(system, handles, i);
+        }
+        double perTick = (double) (System.nanoTime() - start) / measuredTicks;
+
+        CommandScheduler.getInstance().unregisterSubsystem(mechanisms);
+        System.out.printf("%10d %14.1f %18.1f%n", size, perTick, perTick / size);
+    }
+
+    private static void tick(MechanismSystem system, int[] handles, int tick) {
+        // New setpoints every tick, like a profile running on every joint
+        double position = 0.2 + 1e-6 * (tick & 1023);
+        for (int i = 0; i < handles.length; i++) {
+            system.setSetpoint(handles[i], position, 0.5, 1.0, 0.0);
+        }
+        system.updateAllMechanismStates();
+        system.calculateSystemFeedforward();
+        system.executeAllMechanismControl();
+        system.areAllMechanismsAtTarget();
+    }
+
+    /**
+     * Depth of a node of the binary tree numbered breadth first (the root has depth 0)
+     */
+    private static int depth(int index) {
+        return 31 - Integer.numberOfLeadingZeros(index + 1);
+    }
+
+    private static physicalProperties properties(double mass, double x, double z) {
+        return new physicalProperties(mass, new SimpleMatrix(3, 1, true, x, 0.0, z),
+                new SimpleMatrix(3, 3, true, 0.05, 0, 0, 0, 0.2, 0, 0, 0, 0.2), Optional.empty());
+    }
+}
@@ -0,0 +1,159 @@
+package frc.lib.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import frc.lib.structure.motors.KrakenSimIO;
+import frc.lib.structure.motors.MotorConfig;
+import frc.lib.structure.motors.MotorRequest;
+import frc.lib.structure.motors.SimMotorWorld;
+
+/**
+ * Measures simulated motors stepped per second by the batched {@link SimMotorWorld} against the
+ * per-object layout it replaced (one object per motor, each stepped through its own call).
+ * Run with ./gradlew simBenchmark
+ */
+public final class SimMotorWorldBenchmark {
+
+    private static final double SUBSTEP = 0.001;
+    private static final int[] MOTOR_COUNTS = {4, 12, 20, 64};
+    private static final int WARMUP_STEPS = 200_000; // motor steps
+    private static final int MEASURED_STEPS = 1_000_000; // motor steps per run
+
+    private SimMotorWorldBenchmark() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %18s %18s %8s%n", "motors", "world steps/s", "object steps/s", "ratio");
+        for (int motorCount : MOTOR_COUNTS) {
+            int steps = MEASURED_STEPS / motorCount;
+
+            SimMotorWorld world = createWorld(motorCount);
+            runWorld(world, WARMUP_STEPS / motorCount);
+            double worldRate = motorCount * steps / runWorld(world, steps);
+
+            List<PerObjectMotor> motors = createObjects(motorCount);
+            runObjects(motors, WARMUP_STEPS / motorCount);
+            double objectRate = motorCount * steps / runObjects(motors, steps);
+
+            System.out.printf("%8d %18.0f %18.0f %8.2f%n", motorCount, worldRate, objectRate,
+                    worldRate / objectRate);
+        }
+    }
+
+    private static MotorConfig createConfig(int id) {
+        MotorConfig config = new MotorConfig("BenchmarkMotor" + id, id, "rio");
+        config.kP = 40.0;
+        config.kD = 2.0;
+        config.gearRatio = 10.0;
+        config.supplyCurrentLimitEnabled = true;
+        config.supplyCurrentLimit = 40.0;
+        config.statorCurrentLimitEnabled = true;
+        config.statorCurrentLimit = 80.0;
+        return config;
+    }
+
+    private static SimMotorWorld createWorld(int motorCount) {
+        SimMotorWorld world = SimMotorWorld.manual(SUBSTEP);
+        for (int i = 0; i < motorCount; i++) {
+            KrakenSimIO motor = new KrakenSimIO(createConfig(i), world);
+            motor.set(new MotorRequest().withPosition(1.0 + i));
+        }
+        return world;
+    }
+
+    private static List<PerObjectMotor> createObjects(int motorCount) {
+        List<PerObjectMotor> motors = new ArrayList<>();
+        for (int i = 0; i < motorCount; i++) {
+            motors.add(new PerObjectMotor(createConfig(i), 1.0 + i));
+        }
+        return motors;
+    }
+
+    /**
+     * @return Elapsed seconds
+     */
+    private static double runWorld(SimMotorWorld world, int steps) {
+        long start = System.nanoTime();
+        for (int s = 0; s < steps; s++) {
+            world.step(SUBSTEP);
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * @return Elapsed seconds
+     */
+    private static double runObjects(List<PerObjectMotor> motors, int steps) {
+        long start = System.nanoTime();
+        for (int s = 0; s < steps; s++) {
+            for (PerObjectMotor motor : motors) {
+                motor.step(SUBSTEP);
+            }
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Replica of the per-object simulated motor: scalar fields and a config reference per motor,
+     * same control law and plant as the world
+     */
+    private static class PerObjectMotor {
+        private static final DCMotor MOTOR = DCMotor.getKrakenX60Foc(1);
+
+        private final MotorConfig config;
+        private final double targetPosition;
+        private double position = 0.0;
+        private double velocity = 0.0;
+        private double integralError = 0.0;
+        private double temperature = 25.0;
+
+        PerObjectMotor(MotorConfig config, double targetPosition) {
+            this.config = config;
+            this.targetPosition = targetPosition;
+        }
+
+        void step(double dt) {
+            double positionError = targetPosition - position;
+            double velocityError = -velocity;
+            if (Math.abs(positionError) < 0.1) {
+                integralError = MathUtil.clamp(integralError + positionError * dt, -1.0, 1.0);
+            } else {
+                integralError = 0.0;
+            }
+            double desired = config.kP * positionError + config.kI * integralError
+                    + config.kD * velocityError;
+
+            double motorVelocity = velocity * config.gearRatio;
+            double backEmf = motorVelocity / MOTOR.KvRadPerSecPerVolt;
+            double limit = config.statorCurrentLimitEnabled
+                    ? Math.min(config.statorCurrentLimit, MOTOR.stallCurrentAmps)
+                    : MOTOR.stallCurrentAmps;
+            double current = MathUtil.clamp(desired, -limit, limit);
+            double voltage = current * MOTOR.rOhms + backEmf;
+            if (Math.abs(voltage) > 12.0) {
+                voltage = Math.copySign(12.0, voltage);
+                current = (voltage - backEmf) / MOTOR.rOhms;
+            }
+            double supply = voltage * current / 12.0;
+            if (config.supplyCurrentLimitEnabled && supply > config.supplyCurrentLimit) {
+                double direction = Math.signum(current);
+                double maxPower = config.supplyCurrentLimit * 12.0;
+                current = direction * (-direction * backEmf
+                        + Math.sqrt(backEmf * backEmf + 4.0 * MOTOR.rOhms * maxPower)) / (2.0 * MOTOR.rOhms);
+            }
+
+            double torque = (MOTOR.KtNMPerAmp * current - MOTOR.KtNMPerAmp * MOTOR.freeCurrentAmps
+                    * motorVelocity / MOTOR.freeSpeedRadPerSec) * config.gearRatio;
+            double inertia = 0.1 + 5.0e-5 * config.gearRatio * config.gearRatio;
+            velocity += torque / inertia * dt;
+            position += velocity * dt;
+
+            double steadyTemperature = 25.0 + current * current * MOTOR.rOhms;
+            temperature += (steadyTemperature - temperature) * dt / 120.0;
+        }
+    }
+}
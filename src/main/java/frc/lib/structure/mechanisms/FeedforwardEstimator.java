@@ -0,0 +1,192 @@
+package frc.lib.structure.mechanisms;
+
+import java.util.Arrays;
+
+/**
+ * Online recursive least squares estimate of the feedforward gains of a mechanism, fitted to
+ * torque current = kS * sign(v) + kV * v + kA * a + kG * g(position) every loop. The gains are in
+ * amps of torque current per motor (the unit of MotorConfig gains for FOC control).
+ *
+ * Old samples are forgotten exponentially so the estimate follows slow changes (game pieces,
+ * belt wear). Samples near standstill are skipped, the covariance is capped so it cannot wind up
+ * while the mechanism is not excited, and every gain is kept within its bounds.
+ *
+ * All state lives in preallocated arrays, update() does not allocate.
+ */
+public class FeedforwardEstimator {
+
+    public static final int KS = 0;
+    public static final int KV = 1;
+    public static final int KA = 2;
+    public static final int KG = 3;
+    public static final int PARAMETER_COUNT = 4;
+
+    // Tuning, may be changed at any time
+    public double forgettingFactor = 0.995; // time constant of about 200 loops
+    public double minVelocity = 0.05; // output units per second, sign of v is unreliable below
+    public double initialCovariance = 10.0;
+    public double maxCovarianceTrace = 1e4;
+    public final double[] minimum = {0.0, 0.0, 0.0, Double.NEGATIVE_INFINITY};
+    public final double[] maximum = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+
+    private final double[] initialGains = new double[PARAMETER_COUNT];
+    private final double[] gains = new double[PARAMETER_COUNT];
+    // Covariance, row major
+    private final double[] covariance = new double[PARAMETER_COUNT * PARAMETER_COUNT];
+
+    // scratch
+    private final double[] regressor = new double[PARAMETER_COUNT];
+    private final double[] covarianceRegressor = new double[PARAMETER_COUNT];
+
+    private double lastResidual = 0.0;
+    private long updateCount = 0;
+
+    /**
+     * Create an estimator starting from the given gains
+     *
+     * @param kS Static friction
+     * @param kV Velocity gain
+     * @param kA Acceleration gain
+     * @param kG Gravity gain
+     */
+    public FeedforwardEstimator(double kS, double kV, double kA, double kG) {
+        initialGains[KS] = kS;
+        initialGains[KV] = kV;
+        initialGains[KA] = kA;
+        initialGains[KG] = kG;
+        reset();
+    }
+
+    /**
+     * Return to the initial gains and covariance
+     */
+    public void reset() {
+        System.arraycopy(initialGains, 0, gains, 0, PARAMETER_COUNT);
+        Arrays.fill(covariance, 0.0);
+        for (int i = 0; i < PARAMETER_COUNT; i++) {
+            covariance[i * PARAMETER_COUNT + i] = initialCovariance;
+        }
+        lastResidual = 0.0;
+        updateCount = 0;
+    }
+
+    /**
+     * Add one sample
+     *
+     * @param velocity Measured velocity
+     * @param acceleration Measured acceleration
+     * @param gravity Gravity regressor at the measured position (1 for elevators, cos for arms)
+     * @param torqueCurrent Measured torque current per motor (amps)
+     * @return true if the sample was used
+     */
+    public boolean update(double velocity, double acceleration, double gravity, double torqueCurrent) {
+        if (Math.abs(velocity) < minVelocity || !Double.isFinite(acceleration)
+                || !Double.isFinite(torqueCurrent)) {
+            return false;
+        }
+        regressor[KS] = Math.signum(velocity);
+        regressor[KV] = velocity;
+        regressor[KA] = acceleration;
+        regressor[KG] = gravity;
+
+        // P * phi and phi' * P * phi (P is symmetric)
+        double denominator = forgettingFactor;
+        for (int i = 0; i < PARAMETER_COUNT; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < PARAMETER_COUNT; j++) {
+                sum += covariance[i * PARAMETER_COUNT + j] * regressor[j];
+            }
+            covarianceRegressor[i] = sum;
+            denominator += regressor[i] * sum;
+        }
+
+        lastResidual = torqueCurrent - calculate(velocity, acceleration, gravity);
+
+        // theta += K * e with K = P * phi / (lambda + phi' * P * phi)
+        for (int i = 0; i < PARAMETER_COUNT; i++) {
+            gains[i] = clamp(gains[i] + covarianceRegressor[i] / denominator * lastResidual,
+                    minimum[i], maximum[i]);
+        }
+
+        // P = (P - P * phi * phi' * P / denominator) / lambda, capped against windup
+        double trace = 0.0;
+        for (int i = 0; i < PARAMETER_COUNT; i++) {
+            for (int j = 0; j < PARAMETER_COUNT; j++) {
+                covariance[i * PARAMETER_COUNT + j] = (covariance[i * PARAMETER_COUNT + j]
+                        - covarianceRegressor[i] * covarianceRegressor[j] / denominator) / forgettingFactor;
+            }
+            trace += covariance[i * PARAMETER_COUNT + i];
+        }
+        if (trace > maxCovarianceTrace) {
+            double scale = maxCovarianceTrace / trace;
+            for (int i = 0; i < covariance.length; i++) {
+                covariance[i] *= scale;
+            }
+        }
+
+        updateCount++;
+        return true;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Calculate the torque current with the estimated gains
+     *
+     * @param velocity Velocity
+     * @param acceleration Acceleration
+     * @param gravity Gravity regressor
+     * @return Torque current per motor (amps)
+     */
+    public double calculate(double velocity, double acceleration, double gravity) {
+        return gains[KS] * Math.signum(velocity) + gains[KV] * velocity + gains[KA] * acceleration
+                + gains[KG] * gravity;
+    }
+
+    /**
+     * Get an estimated gain
+     *
+     * @param parameter KS, KV, KA or KG
+     * @return Estimated gain
+     */
+    public double getGain(int parameter) {
+        return gains[parameter];
+    }
+
+    public double getKS() {
+        return gains[KS];
+    }
+
+    public double getKV() {
+        return gains[KV];
+    }
+
+    public double getKA() {
+        return gains[KA];
+    }
+
+    public double getKG() {
+        return gains[KG];
+    }
+
+    /**
+     * Get the prediction error of the last used sample
+     *
+     * @return Measured minus predicted torque current (amps)
+     */
+    public double getLastResidual() {
+        return lastResidual;
+    }
+
+    /**
+     * Get number of samples used since the last reset
+     *
+     * @return Number of updates
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+}
@@ -0,0 +1,287 @@
+package frc.lib.structure.mechanisms;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Precomputed feedforward over a regular 1-D or N-D grid of joint positions, queried with
+ * multilinear or Catmull-Rom (cubic) interpolation. Each grid point stores a fixed number of values
+ * (e.g. the three components of a gravity torque).
+ *
+ * A table is built for a configuration fingerprint (see
+ * {@link Mechanism#getConfigurationFingerprint()}); {@link #isValid(long)} tells whether it still
+ * matches. Builds can run on a background thread, the finished values are published atomically so
+ * queries on the main thread never see a partial table. Queries do not allocate, but a table must
+ * only be queried from one thread.
+ */
+public class FeedforwardTable {
+
+    public enum Interpolation {
+        /** Multilinear, 2^N grid points per query */
+        LINEAR,
+        /** Catmull-Rom spline per axis, 4^N grid points per query, continuous slope */
+        CUBIC
+    }
+
+    /**
+     * Values of the table at one grid point
+     */
+    @FunctionalInterface
+    public interface Function {
+        /**
+         * @param positions Joint positions of the grid point
+         * @param result Array to write the values to
+         * @param offset Index of the first value in result
+         */
+        void evaluate(double[] positions, double[] result, int offset);
+    }
+
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FeedforwardTableBuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int dimensions;
+    private final int width;
+    private final double[] minimum;
+    private final double[] step;
+    private final int[] points;
+    private final int[] strides;
+    private final int size;
+    private final Interpolation interpolation;
+
+    // Values and the fingerprint they were built for, replaced as a whole
+    private static final class Snapshot {
+        final double[] values;
+        final long fingerprint;
+
+        Snapshot(double[] values, long fingerprint) {
+            this.values = values;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private volatile Snapshot snapshot = null;
+    private final AtomicBoolean building = new AtomicBoolean(false);
+
+    // query scratch
+    private final int taps;
+    private final int[] tapIndices;
+    private final double[] tapWeights;
+    private final int[] counter;
+    private final double[] singlePosition = new double[1];
+
+    /**
+     * Create an empty table
+     *
+     * @param minimum Lowest position of each joint
+     * @param maximum Highest position of each joint
+     * @param points Number of grid points of each joint (at least 2)
+     * @param width Number of values per grid point
+     * @param interpolation Interpolation between grid points
+     */
+    public FeedforwardTable(double[] minimum, double[] maximum, int[] points, int width,
+            Interpolation interpolation) {
+        if (minimum.length != maximum.length || minimum.length != points.length || points.length == 0) {
+            throw new IllegalArgumentException("Every joint needs a minimum, a maximum and a point count");
+        }
+        this.dimensions = points.length;
+        this.width = width;
+        this.minimum = minimum.clone();
+        this.points = points.clone();
+        this.step = new double[dimensions];
+        this.strides = new int[dimensions];
+        this.interpolation = interpolation;
+
+        int stride = 1;
+        for (int d = dimensions - 1; d >= 0; d--) {
+            if (points[d] < 2 || maximum[d] <= minimum[d]) {
+                throw new IllegalArgumentException("Joint " + d + " needs at least 2 points over a non-empty range");
+            }
+            step[d] = (maximum[d] - minimum[d]) / (points[d] - 1);
+            strides[d] = stride;
+            stride *= points[d];
+        }
+        this.size = stride;
+
+        this.taps = interpolation == Interpolation.CUBIC ? 4 : 2;
+        this.tapIndices = new int[dimensions * taps];
+        this.tapWeights = new double[dimensions * taps];
+        this.counter = new int[dimensions];
+    }
+
+    /**
+     * Build the table on the calling thread
+     *
+     * @param function Values at a grid point, must not depend on mutable state other threads change
+     * @param fingerprint Configuration the values are computed for
+     */
+    public void build(Function function, long fingerprint) {
+        snapshot = new Snapshot(compute(function), fingerprint);
+    }
+
+    /**
+     * Build the table on the background builder thread. The previous values (if any) stay in use
+     * until the build finished. Ignored while a build of this table is running
+     *
+     * @param function Values at a grid point, called from the builder thread
+     * @param fingerprint Configuration the values are computed for
+     */
+    public void buildInBackground(Function function, long fingerprint) {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        builder.execute(() -> {
+            try {
+                build(function, fingerprint);
+            } finally {
+                building.set(false);
+            }
+        });
+    }
+
+    private double[] compute(Function function) {
+        double[] values = new double[size * width];
+        double[] positions = new double[dimensions];
+        int[] index = new int[dimensions];
+        for (int flat = 0; flat < size; flat++) {
+            for (int d = 0; d < dimensions; d++) {
+                positions[d] = minimum[d] + index[d] * step[d];
+            }
+            function.evaluate(positions, values, flat * width);
+
+            // Row-major order, the last joint changes fastest
+            for (int d = dimensions - 1; d >= 0; d--) {
+                if (++index[d] < points[d]) {
+                    break;
+                }
+                index[d] = 0;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Check if the table has values for a configuration
+     *
+     * @param fingerprint Current configuration fingerprint
+     * @return true if the table was built for this configuration
+     */
+    public boolean isValid(long fingerprint) {
+        Snapshot current = snapshot;
+        return current != null && current.fingerprint == fingerprint;
+    }
+
+    /**
+     * Check if a background build is running
+     */
+    public boolean isBuilding() {
+        return building.get();
+    }
+
+    /**
+     * Drop the values, queries fail until the next build
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Interpolate the values of a 1-D table
+     *
+     * @param position Joint position, clamped to the table range
+     * @param result Array to write the values to
+     * @param offset Index of the first value in result
+     * @return false if the table has not been built
+     */
+    public boolean get(double position, double[] result, int offset) {
+        singlePosition[0] = position;
+        return get(singlePosition, result, offset);
+    }
+
+    /**
+     * Interpolate the values at a configuration
+     *
+     * @param positions Joint positions, clamped to the table range
+     * @param result Array to write the values to
+     * @param offset Index of the first value in result
+     * @return false if the table has not been built
+     */
+    public boolean get(double[] positions, double[] result, int offset) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return false;
+        }
+        double[] values = current.values;
+
+        // Grid points and weights along each joint
+        for (int d = 0; d < dimensions; d++) {
+            double u = (positions[d] - minimum[d]) / step[d];
+            u = Math.max(0.0, Math.min(points[d] - 1, u));
+            int i = Math.min((int) u, points[d] - 2);
+            double t = u - i;
+            int tap = d * taps;
+            if (interpolation == Interpolation.CUBIC) {
+                double t2 = t * t;
+                double t3 = t2 * t;
+                tapIndices[tap] = Math.max(i - 1, 0) * strides[d];
+                tapIndices[tap + 1] = i * strides[d];
+                tapIndices[tap + 2] = (i + 1) * strides[d];
+                tapIndices[tap + 3] = Math.min(i + 2, points[d] - 1) * strides[d];
+                tapWeights[tap] = 0.5 * (-t3 + 2.0 * t2 - t);
+                tapWeights[tap + 1] = 0.5 * (3.0 * t3 - 5.0 * t2 + 2.0);
+                tapWeights[tap + 2] = 0.5 * (-3.0 * t3 + 4.0 * t2 + t);
+                tapWeights[tap + 3] = 0.5 * (t3 - t2);
+            } else {
+                tapIndices[tap] = i * strides[d];
+                tapIndices[tap + 1] = (i + 1) * strides[d];
+                tapWeights[tap] = 1.0 - t;
+                tapWeights[tap + 1] = t;
+            }
+            counter[d] = 0;
+        }
+
+        for (int k = 0; k < width; k++) {
+            result[offset + k] = 0.0;
+        }
+
+        // Sum over every combination of taps (taps^N grid points)
+        while (true) {
+            int flat = 0;
+            double weight = 1.0;
+            for (int d = 0; d < dimensions; d++) {
+                flat += tapIndices[d * taps + counter[d]];
+                weight *= tapWeights[d * taps + counter[d]];
+            }
+            int base = flat * width;
+            for (int k = 0; k < width; k++) {
+                result[offset + k] += weight * values[base + k];
+            }
+
+            int d = dimensions - 1;
+            while (d >= 0 && ++counter[d] == taps) {
+                counter[d] = 0;
+                d--;
+            }
+            if (d < 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get number of joints
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Get number of values per grid point
+     */
+    public int getWidth() {
+        return width;
+    }
+}
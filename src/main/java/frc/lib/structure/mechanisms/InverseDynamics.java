@@ -0,0 +1,478 @@
+package frc.lib.structure.mechanisms;
+
+import java.util.List;
+
+import org.ejml.simple.SimpleMatrix;
+
+import frc.lib.structure.configBase;
+import frc.lib.structure.physics.Mat3;
+import frc.lib.structure.physics.Vec3;
+import frc.lib.structure.physics.physicalObject;
+import frc.lib.structure.physics.physicalProperties;
+
+/**
+ * Recursive Newton-Euler inverse dynamics of a tree of linear and rotating mechanisms (e.g. an
+ * elevator carrying an arm carrying a wrist): the force or torque each joint has to apply to follow
+ * given positions, velocities and accelerations while carrying everything mounted on it.
+ *
+ * Geometry is given in the robot frame with every joint at position 0 (the home configuration):
+ * the motion axis of a {@link LinearMechanism}, the axis and pivot of a {@link RotatingMechanism},
+ * and the mass, CG and MOI of each mechanism and its attached objects. A forward sweep from the base
+ * carries the link poses, angular velocities and accelerations and CG accelerations out to the
+ * leaves, a backward sweep sums the forces and moments back towards the base and projects them onto
+ * each joint axis. Gravity enters as an upward acceleration of the base.
+ *
+ * Both sweeps are O(n) and do not allocate. They are also incremental: a link whose joint
+ * position, velocity and acceleration changed by no more than {@link #tolerance} since it was last
+ * calculated, and whose parent did not move differently, keeps its forward quantities, and only
+ * the links on the path from a changed link to the base are summed again in the backward sweep.
+ * An instance must only be used from one thread, {@link #copy()} gives another thread its own.
+ */
+public class InverseDynamics {
+
+    public static final double GRAVITY = 9.81;
+
+    /** Change of a joint position, velocity or acceleration a link is recalculated for */
+    public double tolerance = 1e-6;
+
+    private final int count;
+    private final Mechanism<?, ?, ?>[] mechanisms;
+    private final int[] parents;
+    private final boolean[] rotating;
+    // Children of link i are children[childOffsets[i]] to children[childOffsets[i + 1] - 1]
+    private final int[] childOffsets;
+    private final int[] children;
+
+    // Joint geometry in the home configuration
+    private final Vec3[] homeAxis;
+    private final Vec3[] homePivot;
+
+    // Mass properties of each link (mechanism and attached objects) in the home configuration
+    private final double[] mass;
+    private final Vec3[] homeCG;
+    private final Mat3[] homeMOI;
+    private long fingerprint;
+    private boolean massPropertiesRead = false;
+
+    // Link state of the last calculation, in the robot frame
+    private final Mat3[] rotation;
+    private final Vec3[] origin;
+    private final Vec3[] axis;
+    private final Vec3[] pivot;
+    private final Vec3[] cg;
+    private final Vec3[] omega;
+    private final Vec3[] alpha;
+    private final Vec3[] acceleration;
+    private final Vec3[] force; // of the subtree
+    private final Vec3[] moment;
+    private final Vec3[] ownForce; // of the link alone
+    private final Vec3[] ownMoment;
+    private final double[] effort;
+
+    // Inputs each link was last calculated for, and what the current calculation recomputes
+    private final double[] lastPosition;
+    private final double[] lastVelocity;
+    private final double[] lastAcceleration;
+    private final boolean[] forwardDirty;
+    private final boolean[] backwardDirty;
+    private boolean allDirty = true;
+    private int forwardRecomputations;
+    private int backwardRecomputations;
+
+    // Base of the tree: not moving, accelerating upwards to account for gravity
+    private final Mat3 baseRotation = new Mat3().setIdentity();
+    private final Vec3 baseZero = new Vec3();
+    private final Vec3 baseAcceleration = new Vec3(0.0, 0.0, GRAVITY);
+
+    // Scratch
+    private final Mat3 jointRotation = new Mat3();
+    private final Vec3 r = new Vec3();
+    private final Vec3 temp = new Vec3();
+
+    /**
+     * Create the dynamics of a tree of mechanisms
+     *
+     * @param mechanisms Linear and rotating mechanisms, every parent before its children
+     * @param parents Index of the parent of each mechanism, -1 for mechanisms mounted on the robot
+     */
+    public InverseDynamics(List<? extends Mechanism<?, ?, ?>> mechanisms, int[] parents) {
+        if (mechanisms.size() != parents.length) {
+            throw new IllegalArgumentException("Every mechanism needs a parent index");
+        }
+        this.count = parents.length;
+        this.mechanisms = mechanisms.toArray(new Mechanism<?, ?, ?>[count]);
+        this.parents = parents.clone();
+        this.rotating = new boolean[count];
+        this.homeAxis = vectors(count);
+        this.homePivot = vectors(count);
+        this.mass = new double[count];
+        this.homeCG = vectors(count);
+        this.homeMOI = matrices(count);
+        this.rotation = matrices(count);
+        this.origin = vectors(count);
+        this.axis = vectors(count);
+        this.pivot = vectors(count);
+        this.cg = vectors(count);
+        this.omega = vectors(count);
+        this.alpha = vectors(count);
+        this.acceleration = vectors(count);
+        this.force = vectors(count);
+        this.moment = vectors(count);
+        this.ownForce = vectors(count);
+        this.ownMoment = vectors(count);
+        this.effort = new double[count];
+        this.lastPosition = new double[count];
+        this.lastVelocity = new double[count];
+        this.lastAcceleration = new double[count];
+        this.forwardDirty = new boolean[count];
+        this.backwardDirty = new boolean[count];
+        this.childOffsets = new int[count + 1];
+        this.children = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            if (parents[i] >= i) {
+                throw new IllegalArgumentException("Mechanism " + i + " comes before its parent");
+            }
+            Mechanism<?, ?, ?> mechanism = this.mechanisms[i];
+            if (mechanism instanceof RotatingMechanism) {
+                RotatingMechanism<?, ?, ?> rotatingMechanism = (RotatingMechanism<?, ?, ?>) mechanism;
+                rotating[i] = true;
+                homeAxis[i].set(rotatingMechanism.getRotationAxis()).normalize();
+                homePivot[i].set(rotatingMechanism.getPivotPoint());
+            } else if (mechanism instanceof LinearMechanism) {
+                homeAxis[i].set(((LinearMechanism<?, ?, ?>) mechanism).getMotionAxis()).normalize();
+            } else {
+                throw new IllegalArgumentException(
+                        "Only linear and rotating mechanisms have dynamics: " + mechanism.getName());
+            }
+        }
+
+        // Children grouped by parent
+        for (int i = 0; i < count; i++) {
+            if (parents[i] >= 0) {
+                childOffsets[parents[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+        int[] next = childOffsets.clone();
+        for (int i = 0; i < count; i++) {
+            if (parents[i] >= 0) {
+                children[next[parents[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Create an instance with the same mechanisms and the mass properties last read by
+     * {@link #update()} for another thread. The copy only reads the mechanisms in its own update, so
+     * without it the copy calculates with a snapshot taken on the thread of this instance
+     */
+    public InverseDynamics copy() {
+        InverseDynamics copy = new InverseDynamics(List.of(mechanisms), parents);
+        copy.tolerance = tolerance;
+        for (int i = 0; i < count; i++) {
+            copy.mass[i] = mass[i];
+            copy.homeCG[i].set(homeCG[i]);
+            copy.homeMOI[i].set(homeMOI[i]);
+        }
+        copy.fingerprint = fingerprint;
+        copy.massPropertiesRead = massPropertiesRead;
+        return copy;
+    }
+
+    /**
+     * Read the mass properties of the mechanisms and their attached objects again if they changed
+     * since the last call
+     */
+    public void update() {
+        long current = getConfigurationFingerprint();
+        if (massPropertiesRead && current == fingerprint) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            readMassProperties(i);
+        }
+        fingerprint = current;
+        massPropertiesRead = true;
+        allDirty = true;
+    }
+
+    /**
+     * Recalculate every link on the next calculation
+     */
+    public void invalidate() {
+        allDirty = true;
+    }
+
+    /**
+     * Get a fingerprint of the tree and the configuration of its mechanisms
+     *
+     * @return Fingerprint, see {@link Mechanism#getConfigurationFingerprint()}
+     */
+    public long getConfigurationFingerprint() {
+        long fingerprint = count;
+        for (int i = 0; i < count; i++) {
+            fingerprint = fingerprint * 31 + parents[i];
+            fingerprint = fingerprint * 31 + mechanisms[i].getConfigurationFingerprint();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Combine the mechanism and its attached objects into one rigid body
+     */
+    private void readMassProperties(int i) {
+        List<physicalObject<configBase>> attached = mechanisms[i].getAttachingObjects();
+        double totalMass = 0.0;
+        Vec3 center = homeCG[i].setZero();
+        for (int b = -1; b < attached.size(); b++) {
+            physicalProperties properties = b < 0
+                    ? mechanisms[i].getPhysicalProperties()
+                    : attached.get(b).getPhysicalProperties();
+            if (properties == null || properties.CG == null) {
+                continue;
+            }
+            totalMass += properties.mass;
+            center.addScaled(r.set(properties.CG), properties.mass);
+        }
+        if (totalMass > 0.0) {
+            center.scale(1.0 / totalMass);
+        }
+
+        // Inertia about the combined CG
+        Mat3 inertia = homeMOI[i].setZero();
+        for (int b = -1; b < attached.size(); b++) {
+            physicalProperties properties = b < 0
+                    ? mechanisms[i].getPhysicalProperties()
+                    : attached.get(b).getPhysicalProperties();
+            if (properties == null || properties.CG == null) {
+                continue;
+            }
+            if (properties.MOI != null) {
+                inertia.add(jointRotation.set(properties.MOI));
+            }
+            inertia.addPointMass(properties.mass, r.set(properties.CG).sub(r, center));
+        }
+        mass[i] = totalMass;
+    }
+
+    /**
+     * Calculate the joint forces and torques, reusing the results of links that did not change.
+     * Call {@link #update()} first when the mass properties may have changed
+     *
+     * @param positions Joint positions (m or rad), indexed like the mechanisms
+     * @param velocities Joint velocities (m/s or rad/s)
+     * @param accelerations Joint accelerations (m/s² or rad/s²)
+     * @param efforts Array to write the force (N) along the axis of each linear joint and the
+     *        torque (N⋅m) about the axis of each rotating joint to
+     */
+    public void calculate(double[] positions, double[] velocities, double[] accelerations,
+            double[] efforts) {
+        forwardRecomputations = 0;
+        backwardRecomputations = 0;
+
+        // Forward sweep: pose and motion of each link from those of its parent
+        for (int i = 0; i < count; i++) {
+            int parent = parents[i];
+            boolean dirty = allDirty || (parent >= 0 && forwardDirty[parent])
+                    || Math.abs(positions[i] - lastPosition[i]) > tolerance
+                    || Math.abs(velocities[i] - lastVelocity[i]) > tolerance
+                    || Math.abs(accelerations[i] - lastAcceleration[i]) > tolerance;
+            forwardDirty[i] = dirty;
+            backwardDirty[i] = dirty;
+            if (dirty) {
+                lastPosition[i] = positions[i];
+                lastVelocity[i] = velocities[i];
+                lastAcceleration[i] = accelerations[i];
+                calculateMotion(i);
+                calculateOwnWrench(i);
+                forwardRecomputations++;
+            }
+        }
+        allDirty = false;
+
+        // Backward sweep: force and moment (about the robot origin) the parent applies to each
+        // changed link and its ancestors, the children being summed already
+        for (int i = count - 1; i >= 0; i--) {
+            if (backwardDirty[i]) {
+                force[i].set(ownForce[i]);
+                moment[i].set(ownMoment[i]);
+                for (int c = childOffsets[i]; c < childOffsets[i + 1]; c++) {
+                    force[i].add(force[children[c]]);
+                    moment[i].add(moment[children[c]]);
+                }
+
+                if (rotating[i]) {
+                    // Moment about the pivot
+                    effort[i] = axis[i].dot(moment[i])
+                            - axis[i].dot(temp.cross(pivot[i], force[i]));
+                } else {
+                    effort[i] = axis[i].dot(force[i]);
+                }
+                backwardRecomputations++;
+
+                if (parents[i] >= 0) {
+                    backwardDirty[parents[i]] = true;
+                }
+            }
+            efforts[i] = effort[i];
+        }
+    }
+
+    /**
+     * Pose, angular velocity and acceleration and CG acceleration of a link from its parent and
+     * its last joint inputs
+     */
+    private void calculateMotion(int i) {
+        int parent = parents[i];
+        Mat3 parentRotation = parent < 0 ? baseRotation : rotation[parent];
+        Vec3 parentOrigin = parent < 0 ? baseZero : origin[parent];
+        Vec3 parentCG = parent < 0 ? baseZero : cg[parent];
+        Vec3 parentOmega = parent < 0 ? baseZero : omega[parent];
+        Vec3 parentAlpha = parent < 0 ? baseZero : alpha[parent];
+        Vec3 parentAcceleration = parent < 0 ? baseAcceleration : acceleration[parent];
+        double velocity = lastVelocity[i];
+
+        parentRotation.transform(homeAxis[i], axis[i]);
+        if (rotating[i]) {
+            // x → R_parent (R_joint (x - c) + c) + o_parent
+            parentRotation.transform(homePivot[i], pivot[i]).add(parentOrigin);
+            jointRotation.setRotation(homeAxis[i], lastPosition[i]);
+            rotation[i].mul(parentRotation, jointRotation);
+            jointRotation.transform(homePivot[i], temp).sub(homePivot[i], temp);
+            origin[i].add(parentOrigin, parentRotation.transform(temp, temp));
+
+            omega[i].set(parentOmega).addScaled(axis[i], velocity);
+            alpha[i].set(parentAlpha).addScaled(axis[i], lastAcceleration[i])
+                    .addScaled(temp.cross(parentOmega, axis[i]), velocity);
+        } else {
+            rotation[i].set(parentRotation);
+            origin[i].set(parentOrigin).addScaled(axis[i], lastPosition[i]);
+            omega[i].set(parentOmega);
+            alpha[i].set(parentAlpha);
+        }
+        rotation[i].transform(homeCG[i], cg[i]).add(origin[i]);
+
+        if (rotating[i]) {
+            // The pivot is a point of the parent, the CG moves about it
+            pointAcceleration(parentAcceleration, parentAlpha, parentOmega, parentCG, pivot[i],
+                    acceleration[i]);
+            pointAcceleration(acceleration[i], alpha[i], omega[i], pivot[i], cg[i],
+                    acceleration[i]);
+        } else {
+            // The CG slides along the axis over the point of the parent under it (with the
+            // Coriolis term of sliding in a rotating parent)
+            pointAcceleration(parentAcceleration, parentAlpha, parentOmega, parentCG, cg[i],
+                    acceleration[i]);
+            acceleration[i].addScaled(axis[i], lastAcceleration[i])
+                    .addScaled(temp.cross(parentOmega, axis[i]), 2.0 * velocity);
+        }
+    }
+
+    /**
+     * Force and moment (about the robot origin) that accelerate a link alone
+     */
+    private void calculateOwnWrench(int i) {
+        // Newton: f = m a
+        ownForce[i].scale(acceleration[i], mass[i]);
+        ownMoment[i].cross(cg[i], ownForce[i]);
+
+        // Euler about the CG: n = I α + ω × I ω, with I = R I₀ Rᵀ in the robot frame
+        rotation[i].transformTransposed(alpha[i], r);
+        rotation[i].transform(homeMOI[i].transform(r, r), r);
+        ownMoment[i].add(r);
+        rotation[i].transformTransposed(omega[i], r);
+        rotation[i].transform(homeMOI[i].transform(r, r), r);
+        ownMoment[i].add(temp.cross(omega[i], r));
+    }
+
+    /**
+     * Acceleration of a point of a rigid body: a + α × r + ω × (ω × r), r from the reference point
+     */
+    private void pointAcceleration(Vec3 referenceAcceleration, Vec3 alpha, Vec3 omega,
+            Vec3 reference, Vec3 point, Vec3 result) {
+        r.sub(point, reference);
+        temp.cross(alpha, r);
+        result.add(referenceAcceleration, temp);
+        temp.cross(omega, r);
+        result.add(temp.cross(omega, temp));
+    }
+
+    /**
+     * Get number of links whose forward quantities the last calculation recomputed
+     */
+    public int getForwardRecomputations() {
+        return forwardRecomputations;
+    }
+
+    /**
+     * Get number of links whose subtree force and moment the last calculation recomputed
+     */
+    public int getBackwardRecomputations() {
+        return backwardRecomputations;
+    }
+
+    /**
+     * Get number of mechanisms
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get a mechanism
+     *
+     * @param index Index in the tree order
+     */
+    public Mechanism<?, ?, ?> getMechanism(int index) {
+        return mechanisms[index];
+    }
+
+    /**
+     * Get the parent of a mechanism
+     *
+     * @param index Index in the tree order
+     * @return Index of the parent, -1 for mechanisms mounted on the robot
+     */
+    public int getParent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * Check if a joint is rotating (efforts in N⋅m) or linear (efforts in N)
+     *
+     * @param index Index in the tree order
+     */
+    public boolean isRotating(int index) {
+        return rotating[index];
+    }
+
+    /**
+     * Get the axis of a joint in the robot frame at the last calculated configuration
+     *
+     * @param index Index in the tree order
+     * @param result Matrix to write the unit axis to
+     * @return result
+     */
+    public SimpleMatrix getJointAxis(int index, SimpleMatrix result) {
+        return axis[index].copyTo(result);
+    }
+
+    private static Vec3[] vectors(int count) {
+        Vec3[] vectors = new Vec3[count];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = new Vec3();
+        }
+        return vectors;
+    }
+
+    private static Mat3[] matrices(int count) {
+        Mat3[] matrices = new Mat3[count];
+        for (int i = 0; i < count; i++) {
+            matrices[i] = new Mat3();
+        }
+        return matrices;
+    }
+}
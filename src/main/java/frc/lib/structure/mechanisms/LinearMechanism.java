@@ -1,8 +1,5 @@
 package frc.lib.structure.mechanisms;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.ejml.simple.SimpleMatrix;
 
 import frc.lib.structure.configBase;
@@ -10,6 +7,7 @@ import frc.lib.structure.inputBase;
 import frc.lib.structure.requestBase;
 import frc.lib.structure.motors.MotorConfig;
 import frc.lib.structure.motors.MotorInputs;
+import frc.lib.structure.physics.Vec3;
 import frc.lib.structure.physics.physicalProperties;
 
 /**
@@ -28,6 +26,11 @@ public class LinearMechanism<Tconfig extends configBase, Tinputs extends inputBa
     private SimpleMatrix motionAxis; // Motion axis vector
     private SimpleMatrix startPoint; // Starting point
 
+    // Preallocated so the per-loop physics path does not allocate
+    private final SimpleMatrix feedforward = new SimpleMatrix(3, 1);
+    private final Vec3 scratchAxis = new Vec3();
+    private final Vec3 scratchForce = new Vec3();
+
     public LinearMechanism(String name, physicalProperties properties, SimpleMatrix motionAxis,
             SimpleMatrix startPoint) {
         super(name, properties);
@@ -79,6 +82,7 @@ public class LinearMechanism<Tconfig extends configBase, Tinputs extends inputBa
      * 
      * @return Velocity (m/s)
      */
+    @Override
     public double getVelocity() {
         return velocity;
     }
@@ -88,6 +92,7 @@ public class LinearMechanism<Tconfig extends configBase, Tinputs extends inputBa
      * 
      * @return Acceleration (m/s²)
      */
+    @Override
     public double getAcceleration() {
         return acceleration;
     }
@@ -120,6 +125,37 @@ public class LinearMechanism<Tconfig extends configBase, Tinputs extends inputBa
         return startPoint.plus(motionAxis.scale(currentPosition));
     }
 
+    @Override
+    public double getPosition() {
+        return currentPosition;
+    }
+
+    /**
+     * Meters of travel per radian of a motor's output shaft
+     */
+    @Override
+    protected double getOutputScale(int motorIndex) {
+        return motorConfigs.get(motorIndex).outputRadius;
+    }
+
+    /**
+     * Force holding up the mechanism and its attached objects against gravity (assume gravity
+     * direction is -z), the same sign convention as InverseDynamics
+     */
+    @Override
+    protected void calculateGravityFeedforward(double position, double[] result, int offset) {
+        double mass = getPhysicalProperties().mass;
+        for (int i = 0; i < getAttachingObjects().size(); i++) {
+            physicalProperties properties = getAttachingObjects().get(i).getPhysicalProperties();
+            if (properties != null) {
+                mass += properties.mass;
+            }
+        }
+        result[offset] = 0.0;
+        result[offset + 1] = 0.0;
+        result[offset + 2] = 9.81 * mass;
+    }
+
     @Override
     public void setConfig(Tconfig config) {
         // Implement linear mechanism specific configuration
@@ -134,15 +170,23 @@ public class LinearMechanism<Tconfig extends configBase, Tinputs extends inputBa
             double avgVelocity = 0.0;
             double avgAcceleration = 0.0;
 
-            for (MotorInputs inputs : getMotorInputs()) {
-                avgPosition += inputs.position;
-                avgVelocity += inputs.velocity;
-                avgAcceleration += inputs.acceleration;
+            // Use latency-compensated values (equal to the raw values when compensation is off).
+            // Followers are skipped, an opposed follower reports mirrored values
+            for (int i = 0; i < getMotorCount(); i++) {
+                if (isFollower(i)) {
+                    continue;
+                }
+                // Motors report radians of their output shaft
+                MotorInputs inputs = getMotorInputs(i);
+                double outputRadius = getOutputScale(i);
+                avgPosition += inputs.compensatedPosition * outputRadius;
+                avgVelocity += inputs.compensatedVelocity * outputRadius;
+                avgAcceleration += inputs.acceleration * outputRadius;
             }
 
-            avgPosition /= getMotorCount();
-            avgVelocity /= getMotorCount();
-            avgAcceleration /= getMotorCount();
+            avgPosition /= getLeaderCount();
+            avgVelocity /= getLeaderCount();
+            avgAcceleration /= getLeaderCount();
 
             setCurrentPosition(avgPosition);
             setVelocity(avgVelocity);
@@ -152,55 +196,30 @@ public class LinearMechanism<Tconfig extends configBase, Tinputs extends inputBa
 
     /**
      * Calculate feedforward force for linear mechanism Includes gravity, inertia,
-     * friction, etc.
+     * friction, etc. This is the force the motors must apply (like InverseDynamics efforts),
+     * not the load on them
+     * 
+     * @return Feedforward force, a buffer reused by the next call
      */
     @Override
     public SimpleMatrix getFeedforward(SimpleMatrix noninertialFrame) {
-        // Calculate gravity
-        SimpleMatrix gravity = calculateGravity();
+        double mass = getPhysicalProperties().mass;
+        scratchAxis.set(motionAxis);
 
-        // Calculate inertia
-        SimpleMatrix inertia = calculateInertia();
+        // Gravity (from the gravity table when enabled)
+        getGravityFeedforward(currentPosition, scratchForce);
 
-        // Calculate friction (simplified model)
-        SimpleMatrix friction = calculateFriction();
+        // Inertia F = m * a
+        scratchForce.addScaled(scratchAxis, mass * acceleration);
 
-        // Return total feedforward force
-        return gravity.plus(inertia).plus(friction);
-    }
-
-    /**
-     * Calculate gravity
-     */
-    private SimpleMatrix calculateGravity() {
-        // Gravity vector (assume gravity direction is -z)
-        return new SimpleMatrix(3, 1, true, 0.0, 0.0, -9.81 * getPhysicalProperties().mass);
-    }
-
-    /**
-     * Calculate inertia
-     */
-    private SimpleMatrix calculateInertia() {
-        // F = m * a
-        return motionAxis.scale(getPhysicalProperties().mass * acceleration);
-    }
-
-    /**
-     * Calculate friction (simplified model)
-     */
-    private SimpleMatrix calculateFriction() {
-        // Simplified friction model: opposite to velocity direction, proportional to
-        // velocity
+        // Simplified friction model: proportional to velocity and opposite to it, so the motors
+        // push along the velocity to overcome it
         double frictionCoefficient = 0.1; // Friction coefficient
         double frictionMagnitude = frictionCoefficient * Math.abs(velocity);
+        scratchForce.addScaled(scratchAxis, Math.signum(velocity) * frictionMagnitude);
 
-        if (velocity > 0) {
-            return motionAxis.scale(-frictionMagnitude);
-        } else if (velocity < 0) {
-            return motionAxis.scale(frictionMagnitude);
-        } else {
-            return new SimpleMatrix(3, 1, true, 0.0, 0.0, 0.0);
-        }
+        // Return total feedforward force
+        return scratchForce.copyTo(feedforward);
     }
 
     /**
@@ -209,41 +228,40 @@ public class LinearMechanism<Tconfig extends configBase, Tinputs extends inputBa
      * efficiency for better distribution
      */
     @Override
-    protected List<Double> distributeFeedforwardAmongMotors(SimpleMatrix totalFeedforward) {
-        List<Double> motorFeedforwards = new ArrayList<>();
-
+    protected void distributeFeedforwardAmongMotors(SimpleMatrix totalFeedforward,
+            double[] motorFeedforwards) {
         if (getMotorCount() == 0) {
-            return motorFeedforwards;
+            return;
         }
 
-        // Calculate total feedforward magnitude
-        double totalMagnitude = 0.0;
+        // Force along the joint axis, signed like the joint position (as in InverseDynamics)
+        double totalEffort = 0.0;
         if (totalFeedforward != null && totalFeedforward.getNumRows() > 0) {
-            totalMagnitude = Math.sqrt(totalFeedforward.get(0, 0) * totalFeedforward.get(0, 0)
-                    + totalFeedforward.get(1, 0) * totalFeedforward.get(1, 0)
-                    + totalFeedforward.get(2, 0) * totalFeedforward.get(2, 0));
+            totalEffort = scratchForce.set(totalFeedforward)
+                    .dot(scratchAxis.set(motionAxis).normalize());
         }
 
-        // Calculate total gear ratio and efficiency
+        // Calculate total gear ratio of the leaders, followers mirror their leader
         double totalGearRatio = 0.0;
-        double totalEfficiency = 0.0;
-
-        for (MotorConfig config : motorConfigs) {
-            totalGearRatio += config.gearRatio;
-            totalEfficiency += 0.85; // Assume 85% efficiency per motor
+        for (int i = 0; i < getMotorCount(); i++) {
+            if (!isFollower(i)) {
+                totalGearRatio += motorConfigs.get(i).gearRatio;
+            }
         }
 
         // Distribute based on gear ratio and efficiency
         for (int i = 0; i < getMotorCount(); i++) {
+            if (isFollower(i)) {
+                motorFeedforwards[i] = 0.0;
+                continue;
+            }
             MotorConfig config = motorConfigs.get(i);
             double motorRatio = config.gearRatio / totalGearRatio;
             double motorEfficiency = 0.85; // Individual motor efficiency
 
-            // Feedforward = total force * motor ratio / motor efficiency
-            double motorFeedforward = totalMagnitude * motorRatio / motorEfficiency;
-            motorFeedforwards.add(motorFeedforward);
+            // Feedforward = total force * motor ratio / motor efficiency, as a torque at the
+            // output shaft
+            motorFeedforwards[i] = totalEffort * motorRatio / motorEfficiency * config.outputRadius;
         }
-
-        return motorFeedforwards;
     }
 }
@@ -5,8 +5,11 @@
 package frc.lib.structure.mechanisms;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.ejml.simple.SimpleMatrix;
+import org.littletonrobotics.junction.Logger;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.lib.structure.actuator;
 import frc.lib.structure.configBase;
@@ -17,6 +20,7 @@ import frc.lib.structure.motors.MotorConfig;
 import frc.lib.structure.motors.MotorIO;
 import frc.lib.structure.motors.MotorInputs;
 import frc.lib.structure.motors.MotorRequest;
+import frc.lib.structure.physics.Vec3;
 import frc.lib.structure.physics.physicalObject;
 import frc.lib.structure.physics.physicalProperties;
 
@@ -33,12 +37,40 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
     protected List<MotorIO> motorIOs = new ArrayList<>();
     protected List<MotorConfig> motorConfigs = new ArrayList<>();
     protected List<MotorInputs> motorInputs = new ArrayList<>();
+    // Leader index of each motor, -1 for motors that are not followers
+    protected List<Integer> leaderIndices = new ArrayList<>();
     protected SetPoint currentSetpoint;
+    // Every target setpoint is copied here, so the setpoint buffer row always matches it
+    private final SetPoint ownedSetpoint = new SetPoint(0.0, 0.0, 0.0, 0.0);
+    // Setpoint buffer of the owning MechanismSystem and the row of this mechanism, null until the
+    // system is frozen
+    private SetpointBuffer setpointBuffer;
+    private int setpointHandle = -1;
 
     // Control parameters
     protected double positionTolerance = 0.01; // meters or radians
     protected double velocityTolerance = 0.1; // m/s or rad/s
 
+    // Online feedforward estimation, null until enabled
+    private FeedforwardEstimator feedforwardEstimator;
+    private double feedforwardBlend = 0.0; // 0 = physical model only, 1 = estimate only
+    private String[] estimatorKeys;
+
+    // Preallocated control output, executeControl does not allocate
+    private final SimpleMatrix inertialFrame = new SimpleMatrix(3, 1);
+    private final SimpleMatrix zeroFeedforward = new SimpleMatrix(3, 1);
+    private final List<MotorRequest> motorRequests = new ArrayList<>();
+    private double[] motorFeedforwards = new double[0];
+    private final MotorRequest openLoopRequest = new MotorRequest();
+    private final MotorRequest stopRequest = new MotorRequest().withPosition(0.0).withVelocity(0.0)
+            .withAcceleration(0.0).withFeedforward(0.0);
+
+    // Optional gravity feedforward table over the mechanism position, null to compute directly
+    private FeedforwardTable gravityTable;
+    private boolean gravityTableInBackground;
+    private final double[] gravityValues = new double[3];
+    private final FeedforwardTable.Function gravityFunction =
+            (positions, result, offset) -> calculateGravityFeedforward(positions[0], result, offset);
 
 
     public Mechanism(String name, physicalProperties properties) {
@@ -88,9 +120,154 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
         return this.properties;
     }
 
+    /**
+     * Get the feedforward of this mechanism. Implementations return a buffer they own and overwrite
+     * on the next call, so the per-loop path does not allocate; copy the result to keep it
+     * 
+     * @param noninertialFrame Motion of the frame the mechanism is mounted on
+     * @return Feedforward force or torque
+     */
     @Override
     public SimpleMatrix getFeedforward(SimpleMatrix noninertialFrame) {
-        return new SimpleMatrix(new double[] {0, 0, 0});
+        return zeroFeedforward;
+    }
+
+    /**
+     * Get the position of the mechanism (meters or radians)
+     * 
+     * @return Position, 0 for mechanisms without a position
+     */
+    public double getPosition() {
+        return 0.0;
+    }
+
+    /**
+     * Get the velocity of the mechanism (m/s or rad/s)
+     * 
+     * @return Velocity, 0 for mechanisms without a position
+     */
+    public double getVelocity() {
+        return 0.0;
+    }
+
+    /**
+     * Get the acceleration of the mechanism (m/s² or rad/s²)
+     * 
+     * @return Acceleration, 0 for mechanisms without a position
+     */
+    public double getAcceleration() {
+        return 0.0;
+    }
+
+    /**
+     * Calculate the gravity feedforward (force or torque holding the mechanism and the objects
+     * attached to it against gravity) at a position. Runs on the table builder thread, so implementations must only read
+     * the configuration and local variables, never shared scratch buffers
+     * 
+     * @param position Mechanism position
+     * @param result Array to write the three components to
+     * @param offset Index of the first component in result
+     */
+    protected void calculateGravityFeedforward(double position, double[] result, int offset) {
+        result[offset] = 0.0;
+        result[offset + 1] = 0.0;
+        result[offset + 2] = 0.0;
+    }
+
+    /**
+     * Get the gravity feedforward at a position, from the gravity table when it is enabled and
+     * matches the current configuration. A stale table is rebuilt and the feedforward is
+     * calculated directly until the new table is ready
+     * 
+     * @param position Mechanism position
+     * @param result Vector to write the feedforward to
+     * @return result
+     */
+    protected Vec3 getGravityFeedforward(double position, Vec3 result) {
+        if (gravityTable != null) {
+            long fingerprint = getConfigurationFingerprint();
+            if (gravityTable.isValid(fingerprint)) {
+                gravityTable.get(position, gravityValues, 0);
+                return result.set(gravityValues[0], gravityValues[1], gravityValues[2]);
+            }
+            buildGravityTable(fingerprint);
+        }
+        calculateGravityFeedforward(position, gravityValues, 0);
+        return result.set(gravityValues[0], gravityValues[1], gravityValues[2]);
+    }
+
+    /**
+     * Precompute the gravity feedforward over a range of positions. The table is rebuilt when the
+     * physical properties or the attached objects change
+     * 
+     * @param minimum Lowest position
+     * @param maximum Highest position
+     * @param points Number of grid points
+     * @param interpolation Interpolation between grid points
+     * @param buildInBackground true to build on a background thread (the feedforward is calculated
+     *        directly meanwhile), false to build now and on the loop that detects a change
+     * @return The table
+     */
+    public FeedforwardTable enableGravityTable(double minimum, double maximum, int points,
+            FeedforwardTable.Interpolation interpolation, boolean buildInBackground) {
+        gravityTable = new FeedforwardTable(new double[] {minimum}, new double[] {maximum},
+                new int[] {points}, 3, interpolation);
+        gravityTableInBackground = buildInBackground;
+        buildGravityTable(getConfigurationFingerprint());
+        return gravityTable;
+    }
+
+    /**
+     * Calculate the gravity feedforward directly every loop again
+     */
+    public void disableGravityTable() {
+        gravityTable = null;
+    }
+
+    private void buildGravityTable(long fingerprint) {
+        if (gravityTableInBackground) {
+            gravityTable.buildInBackground(gravityFunction, fingerprint);
+        } else {
+            gravityTable.build(gravityFunction, fingerprint);
+        }
+    }
+
+    /**
+     * Get a fingerprint of the configuration the gravity feedforward depends on: the physical
+     * properties of the mechanism and of its attached objects. Equal fingerprints mean a table is
+     * still valid
+     * 
+     * @return Fingerprint
+     */
+    public long getConfigurationFingerprint() {
+        long fingerprint = fingerprint(1469598103934665603L, properties);
+        fingerprint = mix(fingerprint, attachingObjects.size());
+        for (int i = 0; i < attachingObjects.size(); i++) {
+            fingerprint = fingerprint(fingerprint, attachingObjects.get(i).getPhysicalProperties());
+        }
+        return fingerprint;
+    }
+
+    private static long fingerprint(long fingerprint, physicalProperties properties) {
+        if (properties == null) {
+            return mix(fingerprint, 0.0);
+        }
+        fingerprint = mix(fingerprint, properties.mass);
+        if (properties.CG != null) {
+            for (int i = 0; i < properties.CG.getNumElements(); i++) {
+                fingerprint = mix(fingerprint, properties.CG.get(i));
+            }
+        }
+        if (properties.MOI != null) {
+            for (int i = 0; i < properties.MOI.getNumElements(); i++) {
+                fingerprint = mix(fingerprint, properties.MOI.get(i));
+            }
+        }
+        return fingerprint;
+    }
+
+    private static long mix(long fingerprint, double value) {
+        return (fingerprint ^ Double.doubleToLongBits(value)) * 1099511628211L;
     }
 
     /**
@@ -100,10 +277,226 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
      * @param config Motor configuration
      */
     public void registerMotor(MotorIO motorIO, MotorConfig config) {
+        registerMotor(motorIO, config, -1, false);
+    }
+
+    /**
+     * Register motor for this mechanism, optionally as a follower. A follower is set once to follow
+     * its leader on the device and never receives per-loop requests
+     * 
+     * @param motorIO Motor interface
+     * @param config Motor configuration
+     * @param leaderIndex Index of the leader motor, or -1 if this motor is not a follower
+     * @param opposeLeader Whether the follower turns opposite to its leader
+     */
+    public void registerMotor(MotorIO motorIO, MotorConfig config, int leaderIndex,
+            boolean opposeLeader) {
+        if (leaderIndex >= motorIOs.size() || (leaderIndex >= 0 && isFollower(leaderIndex))) {
+            throw new IllegalArgumentException("Leader must be a registered motor that is not a follower");
+        }
         this.motorIOs.add(motorIO);
         this.motorConfigs.add(config);
         this.motorInputs.add(new MotorInputs());
+        this.leaderIndices.add(leaderIndex < 0 ? -1 : leaderIndex);
+        this.motorRequests.add(new MotorRequest());
+        this.motorFeedforwards = Arrays.copyOf(motorFeedforwards, motorIOs.size());
         motorIO.setConfig(config);
+        if (leaderIndex >= 0) {
+            motorIO.follow(motorIOs.get(leaderIndex), opposeLeader);
+        }
+        updateLoadInertia();
+    }
+
+    /**
+     * Get the inertia driven by the motors, in output units. The default treats the mechanism as a
+     * translating mass
+     * 
+     * @return Load inertia (kg for translation, kg⋅m² for rotation)
+     */
+    public double getLoadInertia() {
+        return properties == null ? 0.0 : properties.mass;
+    }
+
+    /**
+     * Split the load inertia among the leader motors (followers drive through their leader) and
+     * reflect it to their output shafts. Call again after the physical properties changed
+     */
+    public void updateLoadInertia() {
+        int leaderCount = getLeaderCount();
+        if (leaderCount == 0) {
+            return;
+        }
+        double inertiaPerLeader = getLoadInertia() / leaderCount;
+        for (int i = 0; i < motorIOs.size(); i++) {
+            if (!isFollower(i)) {
+                double scale = getOutputScale(i);
+                motorIOs.get(i).setLoadInertia(inertiaPerLeader * scale * scale);
+            }
+        }
+    }
+
+    /**
+     * Get the mechanism travel per radian of a motor's output shaft. Motors work in radians of
+     * their output shaft, positions, velocities and accelerations are divided by this on the way
+     * to a motor and multiplied by it on the way back
+     * 
+     * @param motorIndex Index of the motor
+     * @return 1 unless overridden (e.g. the drum radius of a linear mechanism)
+     */
+    protected double getOutputScale(int motorIndex) {
+        return 1.0;
+    }
+
+    /**
+     * Check if a motor follows another motor
+     * 
+     * @param motorIndex Index of the motor
+     * @return true if the motor is a follower
+     */
+    public boolean isFollower(int motorIndex) {
+        return leaderIndices.get(motorIndex) >= 0;
+    }
+
+    /**
+     * Get number of motors that are not followers
+     * 
+     * @return Number of leader motors
+     */
+    public int getLeaderCount() {
+        int count = 0;
+        for (int leaderIndex : leaderIndices) {
+            if (leaderIndex < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Re-apply the motor configurations after they were modified (e.g. live gain tuning). Motors
+     * that are already running only receive the configuration groups that changed
+     */
+    public void applyMotorConfigs() {
+        for (int i = 0; i < motorIOs.size(); i++) {
+            motorIOs.get(i).setConfig(motorConfigs.get(i));
+        }
+    }
+
+    /**
+     * Enable or disable latency compensation on all motors of this mechanism
+     * 
+     * @param enabled true to extrapolate motor feedback to the current time
+     */
+    public void setLatencyCompensation(boolean enabled) {
+        for (MotorIO motorIO : motorIOs) {
+            motorIO.setLatencyCompensation(enabled);
+        }
+    }
+
+    /**
+     * Start estimating the feedforward gains online from the leader motors' torque current. The
+     * estimate starts from the gains of the first leader's configuration and is published under
+     * "Mechanism/(name)/FeedforwardEstimator/"; it is only used for control after
+     * {@link #setFeedforwardBlend(double)}
+     * 
+     * @return The estimator, its tuning fields may be changed
+     */
+    public FeedforwardEstimator enableFeedforwardEstimation() {
+        if (feedforwardEstimator == null) {
+            MotorConfig seed = null;
+            for (int i = 0; i < motorConfigs.size() && seed == null; i++) {
+                if (!isFollower(i)) {
+                    seed = motorConfigs.get(i);
+                }
+            }
+            feedforwardEstimator = seed == null
+                    ? new FeedforwardEstimator(0.0, 0.0, 0.0, 0.0)
+                    : new FeedforwardEstimator(seed.kS, seed.kV, seed.kA, seed.kG);
+
+            String prefix = "Mechanism/" + name + "/FeedforwardEstimator/";
+            estimatorKeys = new String[] {prefix + "kS", prefix + "kV", prefix + "kA", prefix + "kG",
+                    prefix + "Residual", prefix + "Updates"};
+        }
+        return feedforwardEstimator;
+    }
+
+    /**
+     * Get the online feedforward estimator
+     * 
+     * @return The estimator, or null if estimation is not enabled
+     */
+    public FeedforwardEstimator getFeedforwardEstimator() {
+        return feedforwardEstimator;
+    }
+
+    /**
+     * Set how much of the estimated feedforward replaces the physical model in executeControl
+     * 
+     * @param blend 0 for the physical model only, 1 for the estimate only
+     */
+    public void setFeedforwardBlend(double blend) {
+        this.feedforwardBlend = Math.max(0.0, Math.min(1.0, blend));
+    }
+
+    /**
+     * Get the gravity regressor of the feedforward estimate. The default is constant gravity
+     * (elevators)
+     * 
+     * @param position Mechanism position
+     * @return Factor of kG at this position
+     */
+    protected double getGravityRegressor(double position) {
+        return 1.0;
+    }
+
+    private void updateFeedforwardEstimator() {
+        double position = 0.0;
+        double velocity = 0.0;
+        double acceleration = 0.0;
+        double torqueCurrent = 0.0;
+        int leaders = 0;
+        for (int i = 0; i < motorInputs.size(); i++) {
+            if (!isFollower(i)) {
+                MotorInputs inputs = motorInputs.get(i);
+                position += inputs.position;
+                velocity += inputs.velocity;
+                acceleration += inputs.acceleration;
+                torqueCurrent += inputs.torqueCurrent;
+                leaders++;
+            }
+        }
+        // A disabled robot coasts without torque, those samples say nothing about the gains
+        if (leaders > 0 && DriverStation.isEnabled()) {
+            feedforwardEstimator.update(velocity / leaders, acceleration / leaders,
+                    getGravityRegressor(position / leaders), torqueCurrent / leaders);
+        }
+
+        Logger.recordOutput(estimatorKeys[0], feedforwardEstimator.getKS());
+        Logger.recordOutput(estimatorKeys[1], feedforwardEstimator.getKV());
+        Logger.recordOutput(estimatorKeys[2], feedforwardEstimator.getKA());
+        Logger.recordOutput(estimatorKeys[3], feedforwardEstimator.getKG());
+        Logger.recordOutput(estimatorKeys[4], feedforwardEstimator.getLastResidual());
+        Logger.recordOutput(estimatorKeys[5], feedforwardEstimator.getUpdateCount());
+    }
+
+    /**
+     * Blend the model feedforward of a motor with the estimate at the current setpoint. The
+     * estimate is torque current, it is converted to feedforward units with the motor's kT
+     * 
+     * @param motorIndex Index of the motor
+     * @param modelFeedforward Feedforward of the physical model
+     * @return Feedforward to send
+     */
+    protected double blendFeedforward(int motorIndex, double modelFeedforward) {
+        double kT = motorConfigs.get(motorIndex).kT;
+        if (feedforwardEstimator == null || feedforwardBlend <= 0.0 || kT <= 0.0) {
+            return modelFeedforward;
+        }
+        // The estimate is fitted to motor feedback, in output units
+        double scale = getOutputScale(motorIndex);
+        double estimate = feedforwardEstimator.calculate(currentSetpoint.velocity / scale,
+                currentSetpoint.acceleration / scale, getGravityRegressor(currentSetpoint.position)) / kT;
+        return (1.0 - feedforwardBlend) * modelFeedforward + feedforwardBlend * estimate;
     }
 
     /**
@@ -117,6 +510,9 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
                 motorIOs.get(i).updateInputs(motorInputs.get(i));
             }
             updateStateFromMotorInputs();
+            if (feedforwardEstimator != null) {
+                updateFeedforwardEstimator();
+            }
         }
     }
 
@@ -129,32 +525,112 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
     }
 
     /**
-     * Set target setpoint for this mechanism
+     * Set target setpoint for this mechanism, the values are copied (changing the setpoint
+     * afterwards has no effect until it is set again)
      * 
-     * @param setpoint Target setpoint
+     * @param setpoint Target setpoint, null to clear it
      */
     public void setTargetSetpoint(SetPoint setpoint) {
-        this.currentSetpoint = setpoint;
+        if (setpoint == null) {
+            clearTargetSetpoint();
+            return;
+        }
+        setTargetSetpoint(setpoint.position, setpoint.velocity, setpoint.acceleration,
+                setpoint.feedforward);
+    }
+
+    /**
+     * Set target setpoint for this mechanism without allocating, the values are copied into a
+     * setpoint the mechanism owns and written through to the setpoint buffer of its system
+     * 
+     * @param position Target position (meters or radians)
+     * @param velocity Target velocity
+     * @param acceleration Target acceleration
+     * @param feedforward Additional feedforward
+     */
+    public void setTargetSetpoint(double position, double velocity, double acceleration,
+            double feedforward) {
+        ownedSetpoint.position = position;
+        ownedSetpoint.velocity = velocity;
+        ownedSetpoint.acceleration = acceleration;
+        ownedSetpoint.feedforward = feedforward;
+        this.currentSetpoint = ownedSetpoint;
+        if (setpointBuffer != null) {
+            setpointBuffer.set(setpointHandle, position, velocity, acceleration, feedforward);
+        }
+    }
+
+    /**
+     * Clear the target setpoint, executeControl stops sending requests
+     */
+    public void clearTargetSetpoint() {
+        this.currentSetpoint = null;
+        if (setpointBuffer != null) {
+            setpointBuffer.clear(setpointHandle);
+        }
     }
 
     /**
-     * Execute control for this mechanism This should be called periodically (e.g., every 20ms)
+     * Attach the setpoint buffer of the system this mechanism was frozen into, the current
+     * setpoint is written to it right away and every change afterwards
+     * 
+     * @param buffer Setpoint buffer of the system
+     * @param handle Row of this mechanism
+     */
+    void bindSetpointBuffer(SetpointBuffer buffer, int handle) {
+        this.setpointBuffer = buffer;
+        this.setpointHandle = handle;
+        if (currentSetpoint == null) {
+            buffer.clear(handle);
+        } else {
+            buffer.set(handle, currentSetpoint.position, currentSetpoint.velocity,
+                    currentSetpoint.acceleration, currentSetpoint.feedforward);
+        }
+    }
+
+    /**
+     * Execute control for this mechanism This should be called periodically (e.g., every 20ms).
+     * Does not allocate in steady state (see MechanismAllocationTest), so nothing on this path
+     * (including MotorIO.set) may log per call; logging belongs in updateInputs
      */
     public void executeControl() {
         if (!motorIOs.isEmpty() && currentSetpoint != null) {
             // Calculate total feedforward for the mechanism
-            SimpleMatrix totalFeedforward = getFeedforward(new SimpleMatrix(3, 1));
+            SimpleMatrix totalFeedforward = getFeedforward(inertialFrame);
 
             // Distribute feedforward among motors based on their configuration
-            List<Double> motorFeedforwards = distributeFeedforwardAmongMotors(totalFeedforward);
+            distributeFeedforwardAmongMotors(totalFeedforward, motorFeedforwards);
 
-            // Send commands to all motors
+            // Send commands to all motors, followers mirror their leader on the device
             for (int i = 0; i < motorIOs.size(); i++) {
-                MotorRequest request = new MotorRequest().withPosition(currentSetpoint.position)
-                        .withVelocity(currentSetpoint.velocity)
-                        .withAcceleration(currentSetpoint.acceleration)
-                        .withFeedforward(motorFeedforwards.get(i));
+                if (isFollower(i)) {
+                    continue;
+                }
+                double scale = getOutputScale(i);
+                MotorRequest request = motorRequests.get(i).withPosition(currentSetpoint.position / scale)
+                        .withVelocity(currentSetpoint.velocity / scale)
+                        .withAcceleration(currentSetpoint.acceleration / scale)
+                        .withFeedforward(blendFeedforward(i, motorFeedforwards[i]));
+
+                motorIOs.get(i).set(request);
+            }
+        }
+    }
 
+    /**
+     * Drive the leader motors open loop (e.g. for characterization). The target setpoint is cleared
+     * so executeControl does not override the output
+     * 
+     * @param controlMode MotorRequest.ControlMode.VOLTAGE or TORQUE_CURRENT
+     * @param output Volts or amps per motor
+     */
+    public void setOpenLoop(MotorRequest.ControlMode controlMode, double output) {
+        clearTargetSetpoint();
+        MotorRequest request = controlMode == MotorRequest.ControlMode.VOLTAGE
+                ? openLoopRequest.withVoltage(output)
+                : openLoopRequest.withTorqueCurrent(output);
+        for (int i = 0; i < motorIOs.size(); i++) {
+            if (!isFollower(i)) {
                 motorIOs.get(i).set(request);
             }
         }
@@ -170,17 +646,21 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
             return false;
         }
 
-        // Check if all motors are at target (use average position/velocity)
+        // Check if all motors are at target (use average position/velocity of the leaders, an
+        // opposed follower reports mirrored values)
         double avgPosition = 0.0;
         double avgVelocity = 0.0;
 
-        for (MotorInputs inputs : motorInputs) {
-            avgPosition += inputs.position;
-            avgVelocity += inputs.velocity;
+        for (int i = 0; i < motorInputs.size(); i++) {
+            if (isFollower(i)) {
+                continue;
+            }
+            avgPosition += motorInputs.get(i).compensatedPosition * getOutputScale(i);
+            avgVelocity += motorInputs.get(i).compensatedVelocity * getOutputScale(i);
         }
 
-        avgPosition /= motorInputs.size();
-        avgVelocity /= motorInputs.size();
+        avgPosition /= getLeaderCount();
+        avgVelocity /= getLeaderCount();
 
         // Check position tolerance
         double positionError = Math.abs(avgPosition - currentSetpoint.position);
@@ -202,11 +682,10 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
      */
     public void emergencyStop() {
         if (!motorIOs.isEmpty()) {
-            MotorRequest stopRequest = new MotorRequest().withPosition(0.0).withVelocity(0.0)
-                    .withAcceleration(0.0).withFeedforward(0.0);
-
-            for (MotorIO motorIO : motorIOs) {
-                motorIO.set(stopRequest);
+            for (int i = 0; i < motorIOs.size(); i++) {
+                if (!isFollower(i)) {
+                    motorIOs.get(i).set(stopRequest);
+                }
             }
         }
     }
@@ -263,36 +742,16 @@ public abstract class Mechanism<Tconfig extends configBase, Tinputs extends inpu
     }
 
     /**
-     * Distribute feedforward among multiple motors This method can be overridden by subclasses for
-     * custom distribution logic
+     * Distribute feedforward among the leader motors. The total is only meaningful along the joint
+     * axis, so each joint type projects it there (keeping its sign) and splits it. Followers mirror
+     * their leader on the device and get 0. It runs every loop and must not allocate
      * 
      * @param totalFeedforward Total feedforward for the mechanism
-     * @return List of feedforward values for each motor
+     * @param motorFeedforwards Feedforward of each motor, written by this method (one entry per
+     *        motor)
      */
-    protected List<Double> distributeFeedforwardAmongMotors(SimpleMatrix totalFeedforward) {
-        List<Double> motorFeedforwards = new ArrayList<>();
-
-        if (motorIOs.isEmpty()) {
-            return motorFeedforwards;
-        }
-
-        // Calculate total feedforward magnitude
-        double totalMagnitude = 0.0;
-        if (totalFeedforward != null && totalFeedforward.getNumRows() > 0) {
-            totalMagnitude = Math.sqrt(totalFeedforward.get(0, 0) * totalFeedforward.get(0, 0)
-                    + totalFeedforward.get(1, 0) * totalFeedforward.get(1, 0)
-                    + totalFeedforward.get(2, 0) * totalFeedforward.get(2, 0));
-        }
-
-        // Default distribution: equal among all motors
-        double feedforwardPerMotor = totalMagnitude / motorIOs.size();
-
-        for (int i = 0; i < motorIOs.size(); i++) {
-            motorFeedforwards.add(feedforwardPerMotor);
-        }
-
-        return motorFeedforwards;
-    }
+    protected abstract void distributeFeedforwardAmongMotors(SimpleMatrix totalFeedforward,
+            double[] motorFeedforwards);
 
     /**
      * Get number of motors in this mechanism
@@ -0,0 +1,112 @@
+package frc.lib.structure.mechanisms;
+
+import static edu.wpi.first.units.Units.Second;
+import static edu.wpi.first.units.Units.Seconds;
+import static edu.wpi.first.units.Units.Volts;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import frc.lib.structure.motors.MotorInputs;
+import frc.lib.structure.motors.MotorRequest;
+
+/**
+ * System identification of a {@link Mechanism} with WPILib's SysIdRoutine (quasistatic and dynamic
+ * tests in both directions). The mechanism is driven open loop with a voltage or, for FOC motors, a
+ * torque current ramp; in that case the routine's "volts" are amps. Output, position and velocity
+ * of the leader motors are recorded with AdvantageKit under "SysId/(mechanism)/" every loop, and
+ * {@code frc.lib.tuning.FeedforwardFitter} fits kS, kV, kA and kG from the log.
+ *
+ * The mechanism state must be updated every loop (e.g. in the owning subsystem's periodic).
+ */
+public class MechanismCharacterization {
+
+    private final Mechanism<?, ?, ?> mechanism;
+    private final MotorRequest.ControlMode controlMode;
+    private final SysIdRoutine routine;
+
+    private final String outputKey;
+    private final String positionKey;
+    private final String velocityKey;
+    private final String stateKey;
+
+    /**
+     * Create a characterization with the default ramps: 1 V/s quasistatic and a 7 V step, or
+     * 2 A/s quasistatic and a 20 A step for torque current
+     *
+     * @param mechanism Mechanism to characterize
+     * @param torqueCurrent true to drive torque current (FOC), false to drive voltage
+     */
+    public MechanismCharacterization(Mechanism<?, ?, ?> mechanism, boolean torqueCurrent) {
+        this(mechanism, torqueCurrent, torqueCurrent
+                ? new SysIdRoutine.Config(Volts.of(2.0).per(Second), Volts.of(20.0), Seconds.of(10.0))
+                : new SysIdRoutine.Config());
+    }
+
+    /**
+     * Create a characterization
+     *
+     * @param mechanism Mechanism to characterize
+     * @param torqueCurrent true to drive torque current (FOC), false to drive voltage
+     * @param config Ramp rate, step and timeout (in amps for torque current)
+     */
+    public MechanismCharacterization(Mechanism<?, ?, ?> mechanism, boolean torqueCurrent,
+            SysIdRoutine.Config config) {
+        this.mechanism = mechanism;
+        this.controlMode = torqueCurrent
+                ? MotorRequest.ControlMode.TORQUE_CURRENT
+                : MotorRequest.ControlMode.VOLTAGE;
+
+        String prefix = "SysId/" + mechanism.getName() + "/";
+        this.outputKey = prefix + "Output";
+        this.positionKey = prefix + "Position";
+        this.velocityKey = prefix + "Velocity";
+        this.stateKey = prefix + "State";
+
+        // The test state is recorded with the samples, so no SysId log is needed
+        this.routine = new SysIdRoutine(
+                new SysIdRoutine.Config(config.m_rampRate, config.m_stepVoltage, config.m_timeout,
+                        state -> Logger.recordOutput(stateKey, state.toString())),
+                new SysIdRoutine.Mechanism(output -> drive(output.in(Volts)), null, mechanism));
+    }
+
+    private void drive(double output) {
+        mechanism.setOpenLoop(controlMode, output);
+
+        double position = 0.0;
+        double velocity = 0.0;
+        int leaders = mechanism.getLeaderCount();
+        for (int i = 0; i < mechanism.getMotorCount(); i++) {
+            if (!mechanism.isFollower(i)) {
+                MotorInputs inputs = mechanism.getMotorInputs(i);
+                position += inputs.position / leaders;
+                velocity += inputs.velocity / leaders;
+            }
+        }
+
+        Logger.recordOutput(outputKey, output);
+        Logger.recordOutput(positionKey, position);
+        Logger.recordOutput(velocityKey, velocity);
+    }
+
+    /**
+     * Get a quasistatic (slow ramp) test command
+     *
+     * @param direction Direction of the test
+     * @return Command running the test
+     */
+    public Command quasistatic(SysIdRoutine.Direction direction) {
+        return routine.quasistatic(direction);
+    }
+
+    /**
+     * Get a dynamic (step) test command
+     *
+     * @param direction Direction of the test
+     * @return Command running the test
+     */
+    public Command dynamic(SysIdRoutine.Direction direction) {
+        return routine.dynamic(direction);
+    }
+}
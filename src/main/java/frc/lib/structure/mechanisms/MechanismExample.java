@@ -1,7 +1,5 @@
 package frc.lib.structure.mechanisms;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 import org.ejml.simple.SimpleMatrix;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
@@ -19,7 +17,9 @@ import frc.lib.structure.physics.physicalProperties;
 public class MechanismExample extends SubsystemBase {
 
     private MechanismSystem mechanismSystem;
-    private Map<String, SetPoint> currentSetpoints;
+    // Setpoint handles of the mechanisms, resolved once
+    private int elevatorHandle;
+    private int armHandle;
 
     // Example mechanisms
     private LinearMechanism<configBase, inputBase, requestBase> elevator;
@@ -32,7 +32,6 @@ public class MechanismExample extends SubsystemBase {
     public MechanismExample() {
         // Initialize mechanism system
         mechanismSystem = new MechanismSystem("ExampleRobot");
-        currentSetpoints = new HashMap<>();
 
         // Create physical properties
         SimpleMatrix elevatorCG = new SimpleMatrix(3, 1, true, 0.0, 0.0, 0.5); // Center of mass at
@@ -125,7 +124,12 @@ public class MechanismExample extends SubsystemBase {
 
         // Register motors with mechanisms
         elevator.registerMotor(elevatorMotor, elevatorConfig);
-        elevator.registerMotor(elevatorMotor2, elevatorConfig2);
+        // The second elevator motor follows the first one on the device, so only one control
+        // frame per loop is sent for the elevator
+        elevator.registerMotor(elevatorMotor2, elevatorConfig2, 0, false);
+        // Game pieces change the elevator's load, estimate its feedforward online and use half of it
+        elevator.enableFeedforwardEstimation().forgettingFactor = 0.99;
+        elevator.setFeedforwardBlend(0.5);
         arm.registerMotor(armMotor, armConfig);
 
         // Add mechanisms to system
@@ -135,11 +139,20 @@ public class MechanismExample extends SubsystemBase {
         // Set parent-child relationship (elevator is parent, arm is child)
         mechanismSystem.setParentChildRelation("Elevator", "Arm");
 
+        // Compile the tree, the periodic passes then run over indices
+        mechanismSystem.freeze();
+        elevatorHandle = mechanismSystem.getHandle("Elevator");
+        armHandle = mechanismSystem.getHandle("Arm");
+
         // Set control parameters
         elevator.setControlParameters(0.01, 0.1); // 1cm position tolerance, 0.1 m/s velocity
                                                   // tolerance
         arm.setControlParameters(0.01, 0.1); // 0.01 rad position tolerance, 0.1 rad/s velocity
                                              // tolerance
+
+        // Look the arm's gravity torque up instead of computing it every loop (rebuilt in the
+        // background when a game piece is attached)
+        arm.enableGravityTable(-Math.PI, Math.PI, 181, FeedforwardTable.Interpolation.CUBIC, true);
     }
 
     @Override
@@ -157,18 +170,14 @@ public class MechanismExample extends SubsystemBase {
      * Set elevator to a specific height
      */
     public void setElevatorHeight(double height, double velocity, double acceleration) {
-        SetPoint setpoint = new SetPoint(height, velocity, acceleration, 0.0);
-        elevator.setTargetSetpoint(setpoint);
-        currentSetpoints.put("Elevator", setpoint);
+        mechanismSystem.setSetpoint(elevatorHandle, height, velocity, acceleration, 0.0);
     }
 
     /**
      * Set arm to a specific angle
      */
     public void setArmAngle(double angle, double angularVelocity, double angularAcceleration) {
-        SetPoint setpoint = new SetPoint(angle, angularVelocity, angularAcceleration, 0.0);
-        arm.setTargetSetpoint(setpoint);
-        currentSetpoints.put("Arm", setpoint);
+        mechanismSystem.setSetpoint(armHandle, angle, angularVelocity, angularAcceleration, 0.0);
     }
 
     /**
@@ -1,11 +1,14 @@
 package frc.lib.structure.mechanisms;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import org.ejml.simple.SimpleMatrix;
+import org.littletonrobotics.junction.Logger;
 import frc.lib.structure.configBase;
 import frc.lib.structure.inputBase;
 import frc.lib.structure.requestBase;
@@ -13,7 +16,7 @@ import frc.lib.structure.requestBase;
 /**
  * Mechanism system manager Manages physical relationships between multiple mechanisms, builds tree
  * structure Calculates feedforward forces for the entire system considering parent-child
- * interactions
+ * interactions, with recursive Newton-Euler inverse dynamics ({@link InverseDynamics})
  */
 public class MechanismSystem {
 
@@ -32,12 +35,60 @@ public class MechanismSystem {
     // System name
     private String systemName;
 
+    // Mechanisms in the order they were added
+    private final List<Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase>> mechanismOrder =
+            new ArrayList<>();
+
+    // Compiled topology, null until frozen: the mechanisms breadth first (roots and siblings in the
+    // order they were added), the parent of each and the range of its children in that order
+    private Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase>[] order;
+    private int[] parentIndices;
+    private int[] childStart;
+    private int[] childEnd;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private SetpointBuffer setpoints;
+
+    // Inverse dynamics of the tree, built from the compiled topology. Static loads use their own
+    // copy so they do not invalidate the incremental state of the feedforward
+    private InverseDynamics dynamics;
+    private InverseDynamics staticDynamics;
+    private final String forwardRecomputationsKey;
+    private final String backwardRecomputationsKey;
+    private final Map<String, Integer> linkIndices = new HashMap<>();
+    private int[] linkMechanisms; // handle of each link
+    private int[] mechanismLinks; // link of each handle, -1 for mechanisms without dynamics
+    private double[] positions;
+    private double[] velocities;
+    private double[] accelerations;
+    private double[] efforts;
+    private double[] zeros;
+    private double[] staticPositions;
+    private double[] staticEfforts;
+    private SimpleMatrix[] outputs;
+    private final Map<String, SimpleMatrix> feedforwardForces = new HashMap<>();
+
+    // Optional gravity feedforward table over the positions of some joints
+    private FeedforwardTable gravityTable;
+    private boolean gravityTableInBackground;
+    private String[] tableJointNames;
+    private int[] tableJoints; // index of each joint in the inverse dynamics
+    private boolean[] inTable; // of each link
+    private double[] tablePositions;
+    private double[] tableReferencePositions; // of the other links, the table is built for
+
+    /** Change of the position of a mechanism outside the gravity table (m or rad) that rebuilds it */
+    public double gravityTableTolerance = 1e-3;
+
     public MechanismSystem(String systemName) {
         this.systemName = systemName;
         this.mechanisms = new ConcurrentHashMap<>();
         this.parentChildRelations = new ConcurrentHashMap<>();
         this.childrenMap = new ConcurrentHashMap<>();
         this.rootMechanism = null;
+        this.forwardRecomputationsKey =
+                "MechanismSystem/" + systemName + "/Feedforward/ForwardRecomputed";
+        this.backwardRecomputationsKey =
+                "MechanismSystem/" + systemName + "/Feedforward/BackwardRecomputed";
     }
 
     /**
@@ -45,7 +96,13 @@ public class MechanismSystem {
      */
     public void addMechanism(
             Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism) {
-        mechanisms.put(mechanism.getName(), mechanism);
+        requireNotFrozen();
+        Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> previous =
+                mechanisms.put(mechanism.getName(), mechanism);
+        if (previous != null) {
+            mechanismOrder.remove(previous);
+        }
+        mechanismOrder.add(mechanism);
 
         // If it's the first mechanism, set as root node
         if (rootMechanism == null) {
@@ -57,14 +114,203 @@ public class MechanismSystem {
      * Set parent-child relationship
      */
     public void setParentChildRelation(String parentName, String childName) {
+        requireNotFrozen();
         if (!mechanisms.containsKey(parentName) || !mechanisms.containsKey(childName)) {
             throw new IllegalArgumentException("Parent or child mechanism not found");
         }
 
-        parentChildRelations.put(childName, parentName);
+        String previousParent = parentChildRelations.put(childName, parentName);
+        List<String> siblings = previousParent == null ? null : childrenMap.get(previousParent);
+        if (siblings != null) {
+            siblings.remove(childName);
+        }
 
         // Update children map
-        childrenMap.computeIfAbsent(parentName, k -> new ArrayList<>()).add(childName);
+        List<String> children = childrenMap.computeIfAbsent(parentName, k -> new ArrayList<>());
+        if (!children.contains(childName)) {
+            children.add(childName);
+        }
+    }
+
+    /**
+     * Compile the mechanisms and their parent-child relations into flat arrays: a breadth-first
+     * order (every parent before its children), the parent index of each mechanism and the index
+     * range of its children. The per-loop passes then iterate indices in this fixed order, and
+     * mechanisms and relations can no longer be added. The first per-loop pass or feedforward
+     * calculation freezes the system if this was not called before
+     * 
+     * @throws IllegalStateException if the parent-child relations contain a cycle
+     */
+    @SuppressWarnings("unchecked")
+    public void freeze() {
+        if (order != null) {
+            return;
+        }
+        int count = mechanismOrder.size();
+        List<Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase>> compiled =
+                new ArrayList<>(count);
+        int[] parents = new int[count];
+        int[] start = new int[count];
+        int[] end = new int[count];
+        for (Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism : mechanismOrder) {
+            if (parentChildRelations.get(mechanism.getName()) == null) {
+                parents[compiled.size()] = -1;
+                compiled.add(mechanism);
+            }
+        }
+        // Children of a mechanism are appended together, so they form a contiguous range
+        for (int i = 0; i < compiled.size(); i++) {
+            start[i] = compiled.size();
+            for (String childName : getChildren(compiled.get(i).getName())) {
+                if (compiled.size() == count) {
+                    break;
+                }
+                parents[compiled.size()] = i;
+                compiled.add(mechanisms.get(childName));
+            }
+            end[i] = compiled.size();
+        }
+        if (compiled.size() != count) {
+            throw new IllegalStateException(
+                    "The parent-child relations of " + systemName + " contain a cycle");
+        }
+
+        indices.clear();
+        for (int i = 0; i < count; i++) {
+            indices.put(compiled.get(i).getName(), i);
+        }
+        parentIndices = parents;
+        childStart = start;
+        childEnd = end;
+        order = compiled.toArray(new Mechanism[count]);
+        setpoints = new SetpointBuffer(count);
+        for (int i = 0; i < count; i++) {
+            order[i].bindSetpointBuffer(setpoints, i);
+        }
+    }
+
+    /**
+     * Check if the system has been compiled
+     */
+    public boolean isFrozen() {
+        return order != null;
+    }
+
+    private void requireNotFrozen() {
+        if (order != null) {
+            throw new IllegalStateException("The mechanism system " + systemName + " is frozen");
+        }
+    }
+
+    /**
+     * Get number of mechanisms
+     */
+    public int getMechanismCount() {
+        return mechanismOrder.size();
+    }
+
+    /**
+     * Get the index of a mechanism in the compiled order, freezes the system
+     * 
+     * @param name Mechanism name
+     * @return Index, -1 if there is no such mechanism
+     */
+    public int getMechanismIndex(String name) {
+        freeze();
+        Integer index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Get mechanism by index, see {@link #getMechanismIndex(String)}
+     */
+    public Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> getMechanism(
+            int index) {
+        freeze();
+        return order[index];
+    }
+
+    /**
+     * Get the index of the parent of a mechanism
+     * 
+     * @param index Mechanism index
+     * @return Parent index, -1 for a mechanism without a parent
+     */
+    public int getParentIndex(int index) {
+        freeze();
+        return parentIndices[index];
+    }
+
+    /**
+     * Get the index of the first child of a mechanism
+     * 
+     * @param index Mechanism index
+     * @return First child index, children are getChildStart(index) to getChildEnd(index) - 1
+     */
+    public int getChildStart(int index) {
+        freeze();
+        return childStart[index];
+    }
+
+    /**
+     * Get the index after the last child of a mechanism
+     * 
+     * @param index Mechanism index
+     * @return End of the child range (exclusive)
+     */
+    public int getChildEnd(int index) {
+        freeze();
+        return childEnd[index];
+    }
+
+    /**
+     * Resolve a mechanism to the handle of the per-loop setpoint API, once at setup. Freezes the
+     * system, handles are indices in the compiled order
+     * 
+     * @param name Mechanism name
+     * @return Handle
+     * @throws IllegalArgumentException if there is no such mechanism
+     */
+    public int getHandle(String name) {
+        int index = getMechanismIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Mechanism not found: " + name);
+        }
+        return index;
+    }
+
+    /**
+     * Set the setpoint of a mechanism without allocating: the mechanism copies it into its own
+     * setpoint and its row of the setpoint buffer
+     * 
+     * @param handle Mechanism handle, see {@link #getHandle(String)}
+     * @param position Target position (meters or radians)
+     * @param velocity Target velocity
+     * @param acceleration Target acceleration
+     * @param feedforward Additional feedforward
+     */
+    public void setSetpoint(int handle, double position, double velocity, double acceleration,
+            double feedforward) {
+        freeze();
+        order[handle].setTargetSetpoint(position, velocity, acceleration, feedforward);
+    }
+
+    /**
+     * Clear the setpoint of a mechanism
+     * 
+     * @param handle Mechanism handle
+     */
+    public void clearSetpoint(int handle) {
+        freeze();
+        order[handle].clearTargetSetpoint();
+    }
+
+    /**
+     * Get the setpoints of all mechanisms, indexed by handle. Freezes the system
+     */
+    public SetpointBuffer getSetpointBuffer() {
+        freeze();
+        return setpoints;
     }
 
     /**
@@ -86,7 +332,7 @@ public class MechanismSystem {
      * Get child mechanisms
      */
     public List<String> getChildren(String parentName) {
-        return childrenMap.getOrDefault(parentName, new ArrayList<>());
+        return childrenMap.getOrDefault(parentName, Collections.emptyList());
     }
 
     /**
@@ -97,12 +343,14 @@ public class MechanismSystem {
     }
 
     /**
-     * Update all mechanism states from motor feedback
+     * Update all mechanism states from motor feedback. The blocking signal reads happen before, in
+     * {@link frc.lib.structure.motors.CanBusSignalRegistry#refreshAll()} (all CAN buses at the
+     * same time), so this only reads the refreshed values
      */
     public void updateAllMechanismStates() {
-        for (Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism : mechanisms
-                .values()) {
-            mechanism.updateMechanismState();
+        freeze();
+        for (int i = 0; i < order.length; i++) {
+            order[i].updateMechanismState();
         }
     }
 
@@ -110,21 +358,22 @@ public class MechanismSystem {
      * Execute control for all mechanisms
      */
     public void executeAllMechanismControl() {
-        for (Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism : mechanisms
-                .values()) {
-            mechanism.executeControl();
+        freeze();
+        for (int i = 0; i < order.length; i++) {
+            order[i].executeControl();
         }
     }
 
     /**
-     * Set setpoints for multiple mechanisms
+     * Set setpoints for multiple mechanisms. Freezes the system, prefer
+     * {@link #setSetpoint(int, double, double, double, double)} in periodic code
      */
     public void setMechanismSetpoints(Map<String, SetPoint> setpoints) {
+        freeze();
         for (Map.Entry<String, SetPoint> entry : setpoints.entrySet()) {
-            Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism =
-                    mechanisms.get(entry.getKey());
-            if (mechanism != null) {
-                mechanism.setTargetSetpoint(entry.getValue());
+            Integer handle = indices.get(entry.getKey());
+            if (handle != null) {
+                order[handle].setTargetSetpoint(entry.getValue());
             }
         }
     }
@@ -133,9 +382,9 @@ public class MechanismSystem {
      * Check if all mechanisms are at target
      */
     public boolean areAllMechanismsAtTarget() {
-        for (Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism : mechanisms
-                .values()) {
-            if (!mechanism.isAtTarget()) {
+        freeze();
+        for (int i = 0; i < order.length; i++) {
+            if (!order[i].isAtTarget()) {
                 return false;
             }
         }
@@ -146,257 +395,369 @@ public class MechanismSystem {
      * Emergency stop all mechanisms
      */
     public void emergencyStopAllMechanisms() {
-        for (Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism : mechanisms
-                .values()) {
+        // Works on an unfrozen system too, stopping must never fail
+        for (Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism : mechanismOrder) {
             mechanism.emergencyStop();
         }
     }
 
     /**
-     * Calculate feedforward forces for the entire system considering parent-child interactions This
-     * method implements true tree-based feedforward calculation
+     * Get the inverse dynamics of the mechanism tree with the current mass properties, freezes the
+     * system. Linear and rotating mechanisms are included, other mechanisms and the mechanisms
+     * mounted on them are not
+     * 
+     * @return Inverse dynamics, indexed in the compiled order (without the excluded mechanisms)
      */
-    public Map<String, SimpleMatrix> calculateSystemFeedforward(Map<String, SetPoint> setpoints) {
-        Map<String, SimpleMatrix> feedforwardForces = new HashMap<>();
-        Map<String, MechanismState> mechanismStates = new HashMap<>();
-
-        // First pass: Update all mechanism states based on setpoints
-        updateAllMechanismStatesFromSetpoints(setpoints, mechanismStates);
+    public InverseDynamics getInverseDynamics() {
+        if (dynamics == null) {
+            buildInverseDynamics();
+        }
+        dynamics.update();
+        return dynamics;
+    }
 
-        // Second pass: Calculate feedforward from root to leaves (top-down)
-        calculateTopDownFeedforward(rootMechanism, setpoints, feedforwardForces, mechanismStates,
-                new SimpleMatrix(3, 1));
+    private void buildInverseDynamics() {
+        freeze();
+
+        // Linear and rotating mechanisms whose ancestors all have dynamics, in the compiled order
+        List<Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase>> links =
+                new ArrayList<>();
+        List<Integer> linkParents = new ArrayList<>();
+        int[] linkOf = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            int parent = parentIndices[i];
+            int parentLink = parent < 0 ? -1 : linkOf[parent];
+            if (hasDynamics(order[i]) && (parent < 0 || parentLink >= 0)) {
+                linkOf[i] = links.size();
+                links.add(order[i]);
+                linkParents.add(parentLink);
+            } else {
+                linkOf[i] = -1;
+            }
+        }
 
-        // Third pass: Calculate reaction forces from leaves to root (bottom-up)
-        calculateBottomUpReactionForces(rootMechanism, feedforwardForces, mechanismStates);
+        int count = links.size();
+        int[] parents = new int[count];
+        linkMechanisms = new int[count];
+        mechanismLinks = linkOf;
+        linkIndices.clear();
+        feedforwardForces.clear();
+        outputs = new SimpleMatrix[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = linkParents.get(i);
+            linkMechanisms[i] = indices.get(links.get(i).getName());
+            linkIndices.put(links.get(i).getName(), i);
+            outputs[i] = new SimpleMatrix(3, 1);
+        }
+        positions = new double[count];
+        velocities = new double[count];
+        accelerations = new double[count];
+        efforts = new double[count];
+        zeros = new double[count];
+        staticPositions = new double[count];
+        staticEfforts = new double[count];
+        dynamics = new InverseDynamics(links, parents);
+        staticDynamics = dynamics.copy();
+
+        if (gravityTable != null) {
+            bindGravityTable();
+        }
+    }
 
-        return feedforwardForces;
+    private static boolean hasDynamics(Mechanism<?, ?, ?> mechanism) {
+        return mechanism instanceof LinearMechanism || mechanism instanceof RotatingMechanism;
     }
 
     /**
-     * Update all mechanism states based on setpoints
+     * Calculate the feedforward of every mechanism of the tree with recursive Newton-Euler inverse
+     * dynamics: the force or torque each joint needs to follow its setpoint while carrying (and
+     * accelerating) the mechanisms mounted on it. Mechanisms without a setpoint are taken at their
+     * current state. Only mechanisms whose state changed, their descendants and the path to the
+     * root are recomputed, see {@link #getForwardRecomputations()}
+     * 
+     * The returned map and its matrices are reused by the next call, so the per-loop path does not
+     * allocate
+     * 
+     * @param setpoints Setpoints by mechanism name
+     * @return Feedforward by mechanism name: the joint force or torque along the current joint axis
      */
-    private void updateAllMechanismStatesFromSetpoints(Map<String, SetPoint> setpoints,
-            Map<String, MechanismState> mechanismStates) {
-        for (Map.Entry<String, SetPoint> entry : setpoints.entrySet()) {
-            String mechanismName = entry.getKey();
-            SetPoint setpoint = entry.getValue();
-            Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism =
-                    mechanisms.get(mechanismName);
-
-            if (mechanism != null) {
-                MechanismState state = new MechanismState();
-                state.mechanism = mechanism;
-                state.setpoint = setpoint;
-
-                // Update mechanism state based on type
-                if (mechanism instanceof LinearMechanism) {
-                    LinearMechanism<?, ?, ?> linearMech = (LinearMechanism<?, ?, ?>) mechanism;
-                    linearMech.setCurrentPosition(setpoint.position);
-                    linearMech.setVelocity(setpoint.velocity);
-                    linearMech.setAcceleration(setpoint.acceleration);
-
-                    state.position = setpoint.position;
-                    state.velocity = setpoint.velocity;
-                    state.acceleration = setpoint.acceleration;
-                    state.type = MechanismType.LINEAR;
-                } else if (mechanism instanceof RotatingMechanism) {
-                    RotatingMechanism<?, ?, ?> rotatingMech =
-                            (RotatingMechanism<?, ?, ?>) mechanism;
-                    rotatingMech.setCurrentAngle(setpoint.position);
-                    rotatingMech.setAngularVelocity(setpoint.velocity);
-                    rotatingMech.setAngularAcceleration(setpoint.acceleration);
-
-                    state.position = setpoint.position;
-                    state.velocity = setpoint.velocity;
-                    state.acceleration = setpoint.acceleration;
-                    state.type = MechanismType.ROTATING;
-                }
-
-                mechanismStates.put(mechanismName, state);
+    public Map<String, SimpleMatrix> calculateSystemFeedforward(Map<String, SetPoint> setpoints) {
+        InverseDynamics dynamics = getInverseDynamics();
+        for (int i = 0; i < dynamics.getCount(); i++) {
+            SetPoint setpoint = setpoints.get(dynamics.getMechanism(i).getName());
+            if (setpoint != null) {
+                positions[i] = setpoint.position;
+                velocities[i] = setpoint.velocity;
+                accelerations[i] = setpoint.acceleration;
+            } else {
+                loadCurrentState(dynamics, i);
             }
         }
+        return calculateFeedforwardForces(dynamics);
     }
 
     /**
-     * Top-down feedforward calculation (parent motion affects children)
+     * Calculate the feedforward of every mechanism of the tree like
+     * {@link #calculateSystemFeedforward(Map)}, from the setpoint buffer. Does not allocate
+     * 
+     * @return Feedforward by mechanism name, see also {@link #getJointEffort(int)}
      */
-    private void calculateTopDownFeedforward(String mechanismName, Map<String, SetPoint> setpoints,
-            Map<String, SimpleMatrix> feedforwardForces,
-            Map<String, MechanismState> mechanismStates, SimpleMatrix parentMotion) {
-
-        Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism =
-                mechanisms.get(mechanismName);
-
-        if (mechanism == null) {
-            return;
-        }
-
-        MechanismState state = mechanismStates.get(mechanismName);
-        if (state == null) {
-            return;
+    public Map<String, SimpleMatrix> calculateSystemFeedforward() {
+        InverseDynamics dynamics = getInverseDynamics();
+        for (int i = 0; i < dynamics.getCount(); i++) {
+            int handle = linkMechanisms[i];
+            if (setpoints.isSet(handle)) {
+                positions[i] = setpoints.getPosition(handle);
+                velocities[i] = setpoints.getVelocity(handle);
+                accelerations[i] = setpoints.getAcceleration(handle);
+            } else {
+                loadCurrentState(dynamics, i);
+            }
         }
+        return calculateFeedforwardForces(dynamics);
+    }
 
-        // Calculate base feedforward for this mechanism
-        SimpleMatrix baseFeedforward = mechanism.getFeedforward(parentMotion);
+    private void loadCurrentState(InverseDynamics dynamics, int link) {
+        Mechanism<?, ?, ?> mechanism = dynamics.getMechanism(link);
+        positions[link] = mechanism.getPosition();
+        velocities[link] = mechanism.getVelocity();
+        accelerations[link] = mechanism.getAcceleration();
+    }
 
-        // Add parent motion effects to children
-        List<String> children = getChildren(mechanismName);
-        for (String childName : children) {
-            MechanismState childState = mechanismStates.get(childName);
-            if (childState != null) {
-                // Calculate how parent motion affects child
-                SimpleMatrix childMotionEffect =
-                        calculateChildMotionEffect(state, childState, parentMotion);
+    private Map<String, SimpleMatrix> calculateFeedforwardForces(InverseDynamics dynamics) {
+        dynamics.calculate(positions, velocities, accelerations, efforts);
+        Logger.recordOutput(forwardRecomputationsKey, dynamics.getForwardRecomputations());
+        Logger.recordOutput(backwardRecomputationsKey, dynamics.getBackwardRecomputations());
 
-                // Recursively calculate child feedforward with combined motion
-                SimpleMatrix combinedMotion = parentMotion.plus(childMotionEffect);
-                calculateTopDownFeedforward(childName, setpoints, feedforwardForces,
-                        mechanismStates, combinedMotion);
+        for (int i = 0; i < dynamics.getCount(); i++) {
+            SimpleMatrix output = dynamics.getJointAxis(i, outputs[i]);
+            for (int k = 0; k < 3; k++) {
+                output.set(k, 0, output.get(k, 0) * efforts[i]);
             }
+            feedforwardForces.put(dynamics.getMechanism(i).getName(), output);
         }
-
-        // Store the base feedforward (will be modified in bottom-up pass)
-        feedforwardForces.put(mechanismName, baseFeedforward);
+        return feedforwardForces;
     }
 
     /**
-     * Bottom-up reaction force calculation (children affect parent)
+     * Get the joint force (N) or torque (N⋅m) of a mechanism from the last
+     * calculateSystemFeedforward
+     * 
+     * @param name Mechanism name
+     * @return Force along or torque about the joint axis
      */
-    private SimpleMatrix calculateBottomUpReactionForces(String mechanismName,
-            Map<String, SimpleMatrix> feedforwardForces,
-            Map<String, MechanismState> mechanismStates) {
-
-        Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism =
-                mechanisms.get(mechanismName);
-
-        if (mechanism == null) {
-            return new SimpleMatrix(3, 1);
-        }
-
-        MechanismState state = mechanismStates.get(mechanismName);
-        if (state == null) {
-            return new SimpleMatrix(3, 1);
+    public double getJointEffort(String name) {
+        Integer index = linkIndices.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Mechanism has no dynamics: " + name);
         }
+        return efforts[index];
+    }
 
-        // Get base feedforward for this mechanism
-        SimpleMatrix totalFeedforward =
-                feedforwardForces.getOrDefault(mechanismName, new SimpleMatrix(3, 1));
+    /**
+     * Get number of mechanisms whose motion the last feedforward calculation recomputed, the others
+     * held their position, velocity and acceleration within the tolerance of
+     * {@link InverseDynamics#tolerance} and reused their previous result
+     */
+    public int getForwardRecomputations() {
+        return getInverseDynamics().getForwardRecomputations();
+    }
 
-        // Calculate reaction forces from all children
-        List<String> children = getChildren(mechanismName);
-        SimpleMatrix totalReactionForce = new SimpleMatrix(3, 1);
+    /**
+     * Get number of mechanisms whose joint force or torque the last feedforward calculation
+     * recomputed: the changed mechanisms and their ancestors
+     */
+    public int getBackwardRecomputations() {
+        return getInverseDynamics().getBackwardRecomputations();
+    }
 
-        for (String childName : children) {
-            MechanismState childState = mechanismStates.get(childName);
-            if (childState != null) {
-                // Recursively get child's total force (including its children's reactions)
-                SimpleMatrix childTotalForce = calculateBottomUpReactionForces(childName,
-                        feedforwardForces, mechanismStates);
+    /**
+     * Get the joint force (N) or torque (N⋅m) of a mechanism from the last feedforward calculation
+     * 
+     * @param handle Mechanism handle
+     * @return Force along or torque about the joint axis, 0 for a mechanism without dynamics
+     */
+    public double getJointEffort(int handle) {
+        getInverseDynamics();
+        int link = mechanismLinks[handle];
+        return link < 0 ? 0.0 : efforts[link];
+    }
 
-                // Calculate reaction force that child exerts on parent
-                SimpleMatrix reactionForce =
-                        calculateReactionForce(state, childState, childTotalForce);
-                totalReactionForce = totalReactionForce.plus(reactionForce);
+    /**
+     * Precompute the gravity feedforward of the system over the positions of some joints.
+     * Mechanisms that are not joints of the table keep the position they have when the table is
+     * built. The table is rebuilt when one of them moves by more than
+     * {@link #gravityTableTolerance}, or when a mechanism's physical properties or attached objects
+     * change. Positions and mass properties are read on the calling thread, a background build only
+     * works on a snapshot of them. Freezes the system
+     * 
+     * @param joints Names of the joint mechanisms
+     * @param minimum Lowest position of each joint
+     * @param maximum Highest position of each joint
+     * @param points Number of grid points of each joint
+     * @param interpolation Interpolation between grid points
+     * @param buildInBackground true to build on a background thread (the feedforward is calculated
+     *        directly meanwhile), false to build now and on the loop that detects a change
+     * @return The table, with one value (the joint force or torque) per joint
+     */
+    public FeedforwardTable enableGravityTable(String[] joints, double[] minimum, double[] maximum,
+            int[] points, FeedforwardTable.Interpolation interpolation, boolean buildInBackground) {
+        for (String joint : joints) {
+            if (!mechanisms.containsKey(joint)) {
+                throw new IllegalArgumentException("Mechanism not found: " + joint);
             }
         }
-
-        // Add reaction forces to this mechanism's feedforward
-        totalFeedforward = totalFeedforward.plus(totalReactionForce);
-        feedforwardForces.put(mechanismName, totalFeedforward);
-
-        return totalFeedforward;
+        tableJointNames = joints.clone();
+        tablePositions = new double[joints.length];
+        gravityTable = new FeedforwardTable(minimum, maximum, points, joints.length, interpolation);
+        gravityTableInBackground = buildInBackground;
+
+        // Building the dynamics binds the table to them
+        if (dynamics != null) {
+            bindGravityTable();
+        }
+        InverseDynamics dynamics = getInverseDynamics();
+        buildGravityTable(getGravityTableFingerprint(dynamics));
+        return gravityTable;
     }
 
     /**
-     * Calculate how parent motion affects child motion
+     * Map the table joints into the inverse dynamics
      */
-    private SimpleMatrix calculateChildMotionEffect(MechanismState parentState,
-            MechanismState childState, SimpleMatrix parentMotion) {
-
-        // This is a simplified calculation - in reality, this would involve
-        // proper kinematic transformations based on the physical connection
-
-        if (parentState.type == MechanismType.LINEAR && childState.type == MechanismType.LINEAR) {
-            // Linear parent affects linear child through direct coupling
-            return parentMotion.scale(0.5); // Simplified coupling factor
-        } else if (parentState.type == MechanismType.LINEAR
-                && childState.type == MechanismType.ROTATING) {
-            // Linear parent affects rotating child (e.g., elevator affects arm)
-            // Convert linear motion to angular motion effect
-            return new SimpleMatrix(3, 1, true, parentMotion.get(0, 0) * 0.1, // Simplified coupling
-                    parentMotion.get(1, 0) * 0.1, parentMotion.get(2, 0) * 0.1);
-        } else if (parentState.type == MechanismType.ROTATING
-                && childState.type == MechanismType.LINEAR) {
-            // Rotating parent affects linear child
-            return new SimpleMatrix(3, 1, true, parentMotion.get(0, 0) * 0.1,
-                    parentMotion.get(1, 0) * 0.1, parentMotion.get(2, 0) * 0.1);
-        } else {
-            // Rotating parent affects rotating child
-            return parentMotion.scale(0.3); // Simplified coupling factor
+    private void bindGravityTable() {
+        int[] joints = new int[tableJointNames.length];
+        inTable = new boolean[dynamics.getCount()];
+        for (int j = 0; j < joints.length; j++) {
+            Integer index = linkIndices.get(tableJointNames[j]);
+            if (index == null) {
+                throw new IllegalArgumentException("Mechanism has no dynamics: " + tableJointNames[j]);
+            }
+            joints[j] = index;
+            inTable[index] = true;
         }
+        tableJoints = joints;
+        tableReferencePositions = new double[dynamics.getCount()];
+        Arrays.fill(tableReferencePositions, Double.NaN);
+        gravityTable.invalidate();
     }
 
     /**
-     * Calculate reaction force that child exerts on parent
+     * Get the gravity feedforward of the table joints at their current positions, from the gravity
+     * table when it matches the current configuration. A stale table is rebuilt and the
+     * feedforward is calculated directly until the new table is ready
+     * 
+     * @param result Array to write one value (the joint force or torque) per joint to
      */
-    private SimpleMatrix calculateReactionForce(MechanismState parentState,
-            MechanismState childState, SimpleMatrix childForce) {
+    public void getGravityFeedforward(double[] result) {
+        if (gravityTable == null) {
+            throw new IllegalStateException("The gravity table is not enabled");
+        }
+        InverseDynamics dynamics = getInverseDynamics();
+        for (int j = 0; j < tableJoints.length; j++) {
+            tablePositions[j] = dynamics.getMechanism(tableJoints[j]).getPosition();
+        }
+        long fingerprint = getGravityTableFingerprint(dynamics);
+        if (gravityTable.isValid(fingerprint)) {
+            gravityTable.get(tablePositions, result, 0);
+            return;
+        }
+        buildGravityTable(fingerprint);
+        staticDynamics.update();
+        for (int i = 0; i < staticPositions.length; i++) {
+            staticPositions[i] = dynamics.getMechanism(i).getPosition();
+        }
+        staticDynamics.calculate(staticPositions, zeros, zeros, staticEfforts);
+        for (int j = 0; j < tableJoints.length; j++) {
+            result[j] = staticEfforts[tableJoints[j]];
+        }
+    }
 
-        // This calculates the reaction force that a child mechanism exerts on its parent
-        // based on Newton's third law and the physical connection geometry
+    /**
+     * Get the fingerprint of the configuration and of the positions of the mechanisms outside the
+     * table. A position only counts as changed once it moved by more than
+     * {@link #gravityTableTolerance}, so sensor noise does not rebuild the table
+     */
+    private long getGravityTableFingerprint(InverseDynamics dynamics) {
+        long fingerprint = dynamics.getConfigurationFingerprint();
+        for (int i = 0; i < tableReferencePositions.length; i++) {
+            if (inTable[i]) {
+                continue;
+            }
+            double position = dynamics.getMechanism(i).getPosition();
+            if (!(Math.abs(position - tableReferencePositions[i]) <= gravityTableTolerance)) {
+                tableReferencePositions[i] = position;
+            }
+            fingerprint = fingerprint * 31 + Double.hashCode(tableReferencePositions[i]);
+        }
+        return fingerprint;
+    }
 
-        if (parentState.type == MechanismType.LINEAR && childState.type == MechanismType.LINEAR) {
-            // Direct force transmission
-            return childForce.scale(-1.0); // Reaction force is opposite
-        } else if (parentState.type == MechanismType.LINEAR
-                && childState.type == MechanismType.ROTATING) {
-            // Rotating child exerts torque on linear parent
-            // Convert torque to force effect
-            return new SimpleMatrix(3, 1, true, -childForce.get(0, 0) * 0.1,
-                    -childForce.get(1, 0) * 0.1, -childForce.get(2, 0) * 0.1);
-        } else if (parentState.type == MechanismType.ROTATING
-                && childState.type == MechanismType.LINEAR) {
-            // Linear child exerts force on rotating parent
-            // Convert force to torque effect
-            return new SimpleMatrix(3, 1, true, -childForce.get(0, 0) * 0.1,
-                    -childForce.get(1, 0) * 0.1, -childForce.get(2, 0) * 0.1);
+    /**
+     * Build the table for the current configuration. The mass properties and the positions of the
+     * mechanisms outside the table are copied here, the builder thread never reads the mechanisms
+     */
+    private void buildGravityTable(long fingerprint) {
+        if (gravityTable.isBuilding()) {
+            return;
+        }
+        staticDynamics.update();
+        InverseDynamics builderDynamics = staticDynamics.copy();
+        int[] joints = tableJoints;
+        double[] referencePositions = tableReferencePositions.clone();
+        int count = builderDynamics.getCount();
+        double[] builderPositions = new double[count];
+        double[] builderZeros = new double[count];
+        double[] builderEfforts = new double[count];
+        FeedforwardTable.Function function = (jointPositions, result, offset) -> {
+            calculateStaticLoads(builderDynamics, joints, jointPositions, referencePositions,
+                    builderPositions, builderZeros, builderEfforts);
+            for (int j = 0; j < joints.length; j++) {
+                result[offset + j] = builderEfforts[joints[j]];
+            }
+        };
+        if (gravityTableInBackground) {
+            gravityTable.buildInBackground(function, fingerprint);
         } else {
-            // Rotating child exerts torque on rotating parent
-            return childForce.scale(-0.5); // Simplified reaction factor
+            gravityTable.build(function, fingerprint);
         }
     }
 
     /**
-     * Get system name
+     * Get a fingerprint of the tree and the configuration of all its mechanisms
+     * 
+     * @return Fingerprint, see {@link Mechanism#getConfigurationFingerprint()}
      */
-    public String getSystemName() {
-        return systemName;
+    public long getConfigurationFingerprint() {
+        return getInverseDynamics().getConfigurationFingerprint();
     }
 
     /**
-     * Get root mechanism name
+     * Calculate the static (gravity only) joint efforts at a configuration: the table joints at
+     * the given positions, the other mechanisms at their reference position, nothing moving. Does
+     * not read the mechanisms, so it can run on the table builder thread with its own dynamics
+     * and buffers
      */
-    public String getRootMechanism() {
-        return rootMechanism;
+    private static void calculateStaticLoads(InverseDynamics dynamics, int[] joints,
+            double[] jointPositions, double[] referencePositions, double[] positions,
+            double[] zeros, double[] efforts) {
+        System.arraycopy(referencePositions, 0, positions, 0, positions.length);
+        for (int j = 0; j < joints.length; j++) {
+            positions[joints[j]] = jointPositions[j];
+        }
+        dynamics.calculate(positions, zeros, zeros, efforts);
     }
 
     /**
-     * Helper class to store mechanism state information
+     * Get system name
      */
-    private static class MechanismState {
-        Mechanism<? extends configBase, ? extends inputBase, ? extends requestBase> mechanism;
-        SetPoint setpoint;
-        double position;
-        double velocity;
-        double acceleration;
-        MechanismType type;
+    public String getSystemName() {
+        return systemName;
     }
 
     /**
-     * Mechanism type enumeration
+     * Get root mechanism name
      */
-    private enum MechanismType {
-        LINEAR, ROTATING
+    public String getRootMechanism() {
+        return rootMechanism;
     }
 }
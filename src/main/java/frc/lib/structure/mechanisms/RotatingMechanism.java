@@ -1,8 +1,5 @@
 package frc.lib.structure.mechanisms;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.ejml.simple.SimpleMatrix;
 
 import frc.lib.structure.configBase;
@@ -10,6 +7,8 @@ import frc.lib.structure.inputBase;
 import frc.lib.structure.requestBase;
 import frc.lib.structure.motors.MotorConfig;
 import frc.lib.structure.motors.MotorInputs;
+import frc.lib.structure.physics.Mat3;
+import frc.lib.structure.physics.Vec3;
 import frc.lib.structure.physics.physicalProperties;
 
 /**
@@ -20,7 +19,18 @@ import frc.lib.structure.physics.physicalProperties;
 public class RotatingMechanism<Tconfig extends configBase, Tinputs extends inputBase, Trequest extends requestBase>
         extends Mechanism<Tconfig, Tinputs, Trequest> {
 
+    /**
+     * Angle the gravity torque is evaluated at
+     */
+    public enum GravityAngleSource {
+        /** Target setpoint (the current angle without a setpoint) */
+        SETPOINT,
+        /** Latency-compensated measured angle */
+        MEASURED
+    }
+
     private double currentAngle; // Current angle (radians)
+    private double measuredAngle; // Latency-compensated measured angle (radians)
     private double angularVelocity; // Angular velocity (rad/s)
     private double angularAcceleration; // Angular acceleration (rad/s²)
 
@@ -28,6 +38,23 @@ public class RotatingMechanism<Tconfig extends configBase, Tinputs extends input
     private SimpleMatrix rotationAxis; // Rotation axis vector
     private SimpleMatrix pivotPoint; // Rotation center point
 
+    // Preallocated so the per-loop physics path does not allocate
+    private final SimpleMatrix feedforward = new SimpleMatrix(3, 1);
+    private final Vec3 scratchAxis = new Vec3();
+    private final Vec3 scratchPivot = new Vec3();
+    private final Vec3 scratchR = new Vec3();
+    private final Vec3 scratchOmega = new Vec3();
+    private final Vec3 scratchTemp = new Vec3();
+    private final Vec3 scratchTorque = new Vec3();
+    private final Mat3 scratchMOI = new Mat3();
+
+    // Rodrigues decomposition of the rotation about the unit axis k:
+    // R(θ) = I cos θ + K sin θ + k kᵀ (1 - cos θ), with K the skew matrix of k
+    private final Mat3 axisOuter = new Mat3();
+    private final Mat3 axisSkew = new Mat3();
+    private volatile GravityMoment gravityMoment;
+    private GravityAngleSource gravityAngleSource = GravityAngleSource.SETPOINT;
+
     public RotatingMechanism(String name, physicalProperties properties, SimpleMatrix rotationAxis,
             SimpleMatrix pivotPoint) {
         super(name, properties);
@@ -36,6 +63,32 @@ public class RotatingMechanism<Tconfig extends configBase, Tinputs extends input
         this.currentAngle = 0.0;
         this.angularVelocity = 0.0;
         this.angularAcceleration = 0.0;
+
+        Vec3 k = new Vec3().set(rotationAxis).normalize();
+        axisOuter.set(k.x * k.x, k.x * k.y, k.x * k.z,
+                k.y * k.x, k.y * k.y, k.y * k.z,
+                k.z * k.x, k.z * k.y, k.z * k.z);
+        axisSkew.set(0.0, -k.z, k.y,
+                k.z, 0.0, -k.x,
+                -k.y, k.x, 0.0);
+    }
+
+    /**
+     * Set the angle the gravity torque is evaluated at
+     * 
+     * @param source Setpoint (default) or latency-compensated measured angle
+     */
+    public void setGravityAngleSource(GravityAngleSource source) {
+        this.gravityAngleSource = source;
+    }
+
+    /**
+     * Get the latency-compensated measured angle
+     * 
+     * @return Measured angle (radians)
+     */
+    public double getMeasuredAngle() {
+        return measuredAngle;
     }
 
     /**
@@ -110,6 +163,121 @@ public class RotatingMechanism<Tconfig extends configBase, Tinputs extends input
         return pivotPoint;
     }
 
+    /**
+     * Get the moment of inertia about the rotation axis: the MOI about the center of mass (parallel
+     * axis theorem) plus the mass at its distance from the axis
+     * 
+     * @return Load inertia (kg⋅m²)
+     */
+    @Override
+    public double getLoadInertia() {
+        physicalProperties properties = getPhysicalProperties();
+        if (properties == null) {
+            return 0.0;
+        }
+        Vec3 axis = scratchAxis.set(rotationAxis).normalize();
+        double axisInertia = scratchMOI.set(properties.MOI).quadraticForm(axis);
+
+        // Distance from the CG to the axis through the pivot
+        Vec3 r = scratchR.set(properties.CG).sub(scratchR, scratchPivot.set(pivotPoint));
+        Vec3 perpendicular = r.addScaled(axis, -axis.dot(r));
+        double distanceSquared = perpendicular.dot(perpendicular);
+
+        return axisInertia + properties.mass * distanceSquared;
+    }
+
+    @Override
+    public double getPosition() {
+        return currentAngle;
+    }
+
+    @Override
+    public double getVelocity() {
+        return angularVelocity;
+    }
+
+    @Override
+    public double getAcceleration() {
+        return angularAcceleration;
+    }
+
+    /**
+     * Torque holding the mechanism and its attached objects against gravity about the pivot,
+     * -(r × F) with F the weight (assume gravity direction is -z) and the same sign convention as
+     * InverseDynamics, with the CGs (given at angle 0) rotated about the axis by the
+     * angle. The mass moment and its Rodrigues terms are cached per configuration, so an
+     * evaluation is one sin/cos pair and a few multiplies
+     */
+    @Override
+    protected void calculateGravityFeedforward(double position, double[] result, int offset) {
+        GravityMoment moment = getGravityMoment();
+        double cos = Math.cos(position);
+        double sin = Math.sin(position);
+        double versine = 1.0 - cos;
+
+        // Rotated sum of m * r, R(θ) m = m cos θ + (K m) sin θ + (k kᵀ m)(1 - cos θ)
+        double rx = moment.x * cos + moment.skewX * sin + moment.outerX * versine;
+        double ry = moment.y * cos + moment.skewY * sin + moment.outerY * versine;
+
+        // -(r × (0, 0, -m * g))
+        result[offset] = 9.81 * ry;
+        result[offset + 1] = -9.81 * rx;
+        result[offset + 2] = 0.0;
+    }
+
+    private GravityMoment getGravityMoment() {
+        long fingerprint = getConfigurationFingerprint();
+        GravityMoment moment = gravityMoment;
+        if (moment == null || moment.fingerprint != fingerprint) {
+            // Sum of m * r over all bodies, r from the pivot to the CG
+            Vec3 sum = new Vec3();
+            for (int i = -1; i < getAttachingObjects().size(); i++) {
+                physicalProperties properties = i < 0
+                        ? getPhysicalProperties()
+                        : getAttachingObjects().get(i).getPhysicalProperties();
+                if (properties == null || properties.CG == null) {
+                    continue;
+                }
+                sum.x += properties.mass * (properties.CG.get(0, 0) - pivotPoint.get(0, 0));
+                sum.y += properties.mass * (properties.CG.get(1, 0) - pivotPoint.get(1, 0));
+                sum.z += properties.mass * (properties.CG.get(2, 0) - pivotPoint.get(2, 0));
+            }
+            moment = new GravityMoment(fingerprint, sum, axisSkew.transform(sum, new Vec3()),
+                    axisOuter.transform(sum, new Vec3()));
+            gravityMoment = moment;
+        }
+        return moment;
+    }
+
+    /**
+     * Mass moment of the bodies about the pivot and its Rodrigues terms for one configuration,
+     * replaced as a whole so the table builder thread can use it too
+     */
+    private static final class GravityMoment {
+        final long fingerprint;
+        final double x, y;
+        final double skewX, skewY;
+        final double outerX, outerY;
+
+        GravityMoment(long fingerprint, Vec3 moment, Vec3 skew, Vec3 outer) {
+            this.fingerprint = fingerprint;
+            this.x = moment.x;
+            this.y = moment.y;
+            this.skewX = skew.x;
+            this.skewY = skew.y;
+            this.outerX = outer.x;
+            this.outerY = outer.y;
+        }
+    }
+
+    /**
+     * Gravity torque of an arm is proportional to the cosine of its angle (0 = horizontal)
+     */
+    @Override
+    protected double getGravityRegressor(double position) {
+        return Math.cos(position);
+    }
+
     @Override
     public void setConfig(Tconfig config) {
         // Implement rotating mechanism specific configuration
@@ -124,16 +292,23 @@ public class RotatingMechanism<Tconfig extends configBase, Tinputs extends input
             double avgAngularVelocity = 0.0;
             double avgAngularAcceleration = 0.0;
 
-            for (MotorInputs inputs : getMotorInputs()) {
-                avgAngle += inputs.position;
-                avgAngularVelocity += inputs.velocity;
+            // Use latency-compensated values (equal to the raw values when compensation is off).
+            // Followers are skipped, an opposed follower reports mirrored values
+            for (int i = 0; i < getMotorCount(); i++) {
+                if (isFollower(i)) {
+                    continue;
+                }
+                MotorInputs inputs = getMotorInputs(i);
+                avgAngle += inputs.compensatedPosition;
+                avgAngularVelocity += inputs.compensatedVelocity;
                 avgAngularAcceleration += inputs.acceleration;
             }
 
-            avgAngle /= getMotorCount();
-            avgAngularVelocity /= getMotorCount();
-            avgAngularAcceleration /= getMotorCount();
+            avgAngle /= getLeaderCount();
+            avgAngularVelocity /= getLeaderCount();
+            avgAngularAcceleration /= getLeaderCount();
 
+            measuredAngle = avgAngle;
             setCurrentAngle(avgAngle);
             setAngularVelocity(avgAngularVelocity);
             setAngularAcceleration(avgAngularAcceleration);
@@ -143,73 +318,37 @@ public class RotatingMechanism<Tconfig extends configBase, Tinputs extends input
     /**
      * Calculate feedforward torque for rotating mechanism Includes gravity torque,
      * inertia torque,
-     * etc.
+     * etc. This is the torque the motors must apply (like InverseDynamics efforts), not the load
+     * on them
+     * 
+     * @return Feedforward torque, a buffer reused by the next call
      */
     @Override
     public SimpleMatrix getFeedforward(SimpleMatrix noninertialFrame) {
-        // Calculate gravity torque
-        SimpleMatrix gravityTorque = calculateGravityTorque();
-
-        // Calculate inertia torque
-        SimpleMatrix inertiaTorque = calculateInertiaTorque();
-
-        // Calculate coriolis torque
-        SimpleMatrix coriolisTorque = calculateCoriolisTorque();
-
-        // Return total feedforward torque
-        return gravityTorque.plus(inertiaTorque).plus(coriolisTorque);
-    }
-
-    /**
-     * Calculate gravity torque
-     */
-    private SimpleMatrix calculateGravityTorque() {
-        // Get center of mass position
-        SimpleMatrix cg = getPhysicalProperties().CG;
-
-        // Calculate gravity vector (assume gravity direction is -z)
-        SimpleMatrix gravity = new SimpleMatrix(3, 1, true, 0.0, 0.0, -9.81 * getPhysicalProperties().mass);
+        physicalProperties properties = getPhysicalProperties();
+        scratchAxis.set(rotationAxis);
+        scratchMOI.set(properties.MOI);
+
+        // Gravity torque at the setpoint or measured angle (from the gravity table when enabled)
+        double gravityAngle;
+        if (gravityAngleSource == GravityAngleSource.MEASURED) {
+            gravityAngle = measuredAngle;
+        } else {
+            gravityAngle = currentSetpoint != null ? currentSetpoint.position : currentAngle;
+        }
+        getGravityFeedforward(gravityAngle, scratchTorque);
 
-        // Calculate gravity torque = r × F
-        SimpleMatrix r = cg.minus(pivotPoint);
-        return crossProduct(r, gravity);
-    }
+        // Inertia torque τ = I * α
+        scratchMOI.transform(scratchTemp.scale(scratchAxis, angularAcceleration), scratchTemp);
+        scratchTorque.add(scratchTemp);
 
-    /**
-     * Calculate inertia torque
-     */
-    private SimpleMatrix calculateInertiaTorque() {
-        // τ = I * α
-        SimpleMatrix moi = getPhysicalProperties().MOI;
-        SimpleMatrix alpha = rotationAxis.scale(angularAcceleration);
-        return moi.mult(alpha);
-    }
-
-    /**
-     * Calculate coriolis torque
-     */
-    private SimpleMatrix calculateCoriolisTorque() {
         // Coriolis torque = ω × (I * ω)
-        SimpleMatrix moi = getPhysicalProperties().MOI;
-        SimpleMatrix omega = rotationAxis.scale(angularVelocity);
-        SimpleMatrix Iw = moi.mult(omega);
-        return crossProduct(omega, Iw);
-    }
+        scratchOmega.scale(scratchAxis, angularVelocity);
+        scratchMOI.transform(scratchOmega, scratchTemp);
+        scratchTorque.add(scratchTemp.cross(scratchOmega, scratchTemp));
 
-    /**
-     * Vector cross product calculation
-     */
-    private SimpleMatrix crossProduct(SimpleMatrix a, SimpleMatrix b) {
-        double ax = a.get(0, 0);
-        double ay = a.get(1, 0);
-        double az = a.get(2, 0);
-
-        double bx = b.get(0, 0);
-        double by = b.get(1, 0);
-        double bz = b.get(2, 0);
-
-        return new SimpleMatrix(3, 1, true, ay * bz - az * by, az * bx - ax * bz,
-                ax * by - ay * bx);
+        // Return total feedforward torque
+        return scratchTorque.copyTo(feedforward);
     }
 
     /**
@@ -218,39 +357,39 @@ public class RotatingMechanism<Tconfig extends configBase, Tinputs extends input
      * efficiency for better distribution
      */
     @Override
-    protected List<Double> distributeFeedforwardAmongMotors(SimpleMatrix totalFeedforward) {
-        List<Double> motorFeedforwards = new ArrayList<>();
-
+    protected void distributeFeedforwardAmongMotors(SimpleMatrix totalFeedforward,
+            double[] motorFeedforwards) {
         if (getMotorCount() == 0) {
-            return motorFeedforwards;
+            return;
         }
 
-        // Calculate total feedforward magnitude (torque)
-        double totalMagnitude = 0.0;
+        // Torque about the joint axis, signed like the joint position (as in InverseDynamics)
+        double totalEffort = 0.0;
         if (totalFeedforward != null && totalFeedforward.getNumRows() > 0) {
-            totalMagnitude = Math.sqrt(totalFeedforward.get(0, 0) * totalFeedforward.get(0, 0)
-                    + totalFeedforward.get(1, 0) * totalFeedforward.get(1, 0)
-                    + totalFeedforward.get(2, 0) * totalFeedforward.get(2, 0));
+            totalEffort = scratchTemp.set(totalFeedforward)
+                    .dot(scratchAxis.set(rotationAxis).normalize());
         }
 
-        // Calculate total gear ratio and efficiency
+        // Calculate total gear ratio of the leaders, followers mirror their leader
         double totalGearRatio = 0.0;
-
-        for (MotorConfig config : motorConfigs) {
-            totalGearRatio += config.gearRatio;
+        for (int i = 0; i < getMotorCount(); i++) {
+            if (!isFollower(i)) {
+                totalGearRatio += motorConfigs.get(i).gearRatio;
+            }
         }
 
         // Distribute torque based on gear ratio and efficiency
         for (int i = 0; i < getMotorCount(); i++) {
+            if (isFollower(i)) {
+                motorFeedforwards[i] = 0.0;
+                continue;
+            }
             MotorConfig config = motorConfigs.get(i);
             double motorRatio = config.gearRatio / totalGearRatio;
             double motorEfficiency = 0.85; // Individual motor efficiency
 
             // Torque = total torque * motor ratio / motor efficiency
-            double motorTorque = totalMagnitude * motorRatio / motorEfficiency;
-            motorFeedforwards.add(motorTorque);
+            motorFeedforwards[i] = totalEffort * motorRatio / motorEfficiency;
         }
-
-        return motorFeedforwards;
     }
 }
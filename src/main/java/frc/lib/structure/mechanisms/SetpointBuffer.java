@@ -0,0 +1,79 @@
+package frc.lib.structure.mechanisms;
+
+/**
+ * Setpoints of the mechanisms of a {@link MechanismSystem} in primitive columns indexed by handle
+ * (see {@link MechanismSystem#getHandle(String)}), so many joints can be read every loop without
+ * maps, boxing or garbage. Each mechanism of the system writes its setpoint through to its row
+ * whenever it is set, cleared or dropped for open loop, so the columns always match the mechanisms
+ * whether the setpoint came from {@link MechanismSystem#setSetpoint} or the mechanism directly
+ */
+public class SetpointBuffer {
+
+    private final double[] position;
+    private final double[] velocity;
+    private final double[] acceleration;
+    private final double[] feedforward;
+    private final boolean[] set;
+
+    SetpointBuffer(int size) {
+        position = new double[size];
+        velocity = new double[size];
+        acceleration = new double[size];
+        feedforward = new double[size];
+        set = new boolean[size];
+    }
+
+    void set(int handle, double position, double velocity, double acceleration, double feedforward) {
+        this.position[handle] = position;
+        this.velocity[handle] = velocity;
+        this.acceleration[handle] = acceleration;
+        this.feedforward[handle] = feedforward;
+        this.set[handle] = true;
+    }
+
+    void clear(int handle) {
+        set[handle] = false;
+    }
+
+    /**
+     * Check if a mechanism has a setpoint
+     */
+    public boolean isSet(int handle) {
+        return set[handle];
+    }
+
+    /**
+     * Get target position (meters or radians)
+     */
+    public double getPosition(int handle) {
+        return position[handle];
+    }
+
+    /**
+     * Get target velocity (m/s or rad/s)
+     */
+    public double getVelocity(int handle) {
+        return velocity[handle];
+    }
+
+    /**
+     * Get target acceleration (m/s² or rad/s²)
+     */
+    public double getAcceleration(int handle) {
+        return acceleration[handle];
+    }
+
+    /**
+     * Get additional feedforward
+     */
+    public double getFeedforward(int handle) {
+        return feedforward[handle];
+    }
+
+    /**
+     * Get number of mechanisms
+     */
+    public int size() {
+        return set.length;
+    }
+}
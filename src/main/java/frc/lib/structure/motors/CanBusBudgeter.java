@@ -0,0 +1,181 @@
+package frc.lib.structure.motors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.littletonrobotics.junction.Logger;
+
+import com.ctre.phoenix6.CANBus;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * CAN bus utilization budgeter.
+ * Adds up the expected frames per second of every registered motor on each {@link MotorConfig#canbus}
+ * (status signals from its {@link SignalProfile} plus its control frames). At startup,
+ * {@link #enforce(double, boolean)} warns about buses over budget and can downgrade signal rates,
+ * diagnostic signals first, before the bus saturates. Downgrades are kept here as scale factors per
+ * bus and applied on top of the configured profiles ({@link #getBudgetedProfile(MotorConfig)}), so
+ * motor configurations keep the intended rates.
+ */
+public final class CanBusBudgeter {
+
+    // Approximate frame capacity of a 1 Mbit/s CAN 2.0 bus (~125 bits per 8 byte frame)
+    private static final double CAN_FRAMES_PER_SECOND = 8000.0;
+    // Approximate frame capacity of a CAN FD bus (CANivore)
+    private static final double CAN_FD_FRAMES_PER_SECOND = 20000.0;
+    // Phoenix resends control requests at 100 Hz by default
+    private static final double CONTROL_FRAMES_PER_SECOND = 100.0;
+
+    private static final Map<MotorIO, MotorConfig> motors = new LinkedHashMap<>();
+    // Downgrades decided by enforce for the buses over budget
+    private static final Map<String, BusScale> scales = new HashMap<>();
+
+    private CanBusBudgeter() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    /**
+     * Register (or re-register) a motor and its configuration
+     */
+    public static synchronized void register(MotorIO motorIO, MotorConfig config) {
+        motors.put(motorIO, config);
+    }
+
+    /**
+     * Remove a motor from the budget
+     */
+    public static synchronized void unregister(MotorIO motorIO) {
+        motors.remove(motorIO);
+    }
+
+    /**
+     * Get the signal profile a motor should run with: its configured profile, downgraded if its bus
+     * is over budget
+     *
+     * @param config Motor configuration
+     * @return New profile, the configuration is not modified
+     */
+    public static synchronized SignalProfile getBudgetedProfile(MotorConfig config) {
+        SignalProfile profile = config.getSignalProfile().copy();
+        BusScale scale = scales.get(config.canbus);
+        if (scale != null) {
+            profile.scaleDiagnostics(scale.diagnostics);
+            profile.scaleFeedback(scale.feedback);
+        }
+        return profile;
+    }
+
+    /**
+     * Get expected frames per second on a bus
+     *
+     * @param canbus Bus name
+     * @return Expected frames per second of all registered motors on the bus
+     */
+    public static synchronized double getExpectedFramesPerSecond(String canbus) {
+        double total = 0.0;
+        for (MotorConfig config : motors.values()) {
+            if (config.canbus.equals(canbus)) {
+                total += getBudgetedProfile(config).getFramesPerSecond() + CONTROL_FRAMES_PER_SECOND;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get approximate frame capacity of a bus
+     */
+    public static double getCapacity(String canbus) {
+        return new CANBus(canbus).isNetworkFD() ? CAN_FD_FRAMES_PER_SECOND : CAN_FRAMES_PER_SECOND;
+    }
+
+    /**
+     * Check every bus against its budget. Should be called once all motors are constructed
+     *
+     * @param maxUtilization Fraction of the bus capacity allowed (e.g. 0.8)
+     * @param autoDowngrade Downgrade signal rates of motors on buses over budget
+     * @return true if every bus is within budget afterwards
+     */
+    public static synchronized boolean enforce(double maxUtilization, boolean autoDowngrade) {
+        boolean withinBudget = true;
+        for (String canbus : getBusNames()) {
+            double budget = maxUtilization * getCapacity(canbus);
+            double expected = getExpectedFramesPerSecond(canbus);
+
+            if (expected > budget) {
+                DriverStation.reportWarning(String.format(
+                        "CAN bus '%s' expects %.0f frames/s, over its budget of %.0f frames/s%s",
+                        canbus, expected, budget, autoDowngrade ? ", downgrading signal rates" : ""),
+                        false);
+                if (autoDowngrade) {
+                    downgrade(canbus, budget);
+                    expected = getExpectedFramesPerSecond(canbus);
+                }
+            }
+
+            Logger.recordOutput("CanBus/" + canbus + "/ExpectedFramesPerSecond", expected);
+            Logger.recordOutput("CanBus/" + canbus + "/ExpectedUtilization", expected / getCapacity(canbus));
+            withinBudget &= expected <= budget;
+        }
+        return withinBudget;
+    }
+
+    /**
+     * Scale diagnostic signals first, then feedback signals, until the bus fits its budget. The
+     * factors are computed from the configured profiles, so repeated calls do not compound
+     */
+    private static void downgrade(String canbus, double budget) {
+        double fixed = 0.0;
+        double feedback = 0.0;
+        double diagnostics = 0.0;
+        for (MotorConfig config : motors.values()) {
+            if (config.canbus.equals(canbus)) {
+                SignalProfile profile = config.getSignalProfile();
+                fixed += CONTROL_FRAMES_PER_SECOND;
+                feedback += profile.getFeedbackFramesPerSecond();
+                diagnostics += profile.getDiagnosticFramesPerSecond();
+            }
+        }
+
+        double diagnosticsFactor = diagnostics > 0
+                ? Math.max(0.0, (budget - fixed - feedback) / diagnostics)
+                : 1.0;
+        double feedbackFactor = 1.0;
+        if (diagnosticsFactor <= 0.0 && feedback > 0) {
+            feedbackFactor = Math.max(0.0, (budget - fixed) / feedback);
+        }
+        scales.put(canbus, new BusScale(Math.min(1.0, diagnosticsFactor), Math.min(1.0, feedbackFactor)));
+
+        for (Map.Entry<MotorIO, MotorConfig> entry : motors.entrySet()) {
+            if (entry.getValue().canbus.equals(canbus)) {
+                entry.getKey().applySignalProfile(getBudgetedProfile(entry.getValue()));
+            }
+        }
+    }
+
+    private static List<String> getBusNames() {
+        List<String> names = new ArrayList<>();
+        for (MotorConfig config : motors.values()) {
+            if (!names.contains(config.canbus)) {
+                names.add(config.canbus);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Downgrade of the signal rates on one bus
+     */
+    private static class BusScale {
+        final double diagnostics;
+        final double feedback;
+
+        BusScale(double diagnostics, double feedback) {
+            this.diagnostics = diagnostics;
+            this.feedback = feedback;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package frc.lib.structure.motors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.littletonrobotics.junction.Logger;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+
+/**
+ * Per-CAN-bus registry of motor status signals.
+ * Every registered motor's signals are grouped by {@link MotorConfig#canbus} and refreshed with a
+ * single synchronized wait per bus per loop, so the worst-case blocking time is one wait per bus
+ * instead of one wait per motor. Motors then read the already refreshed values in updateInputs.
+ *
+ * With more than one bus (e.g. "rio" and a CANivore) the buses are refreshed at the same time: the
+ * first bus on the calling thread and every other bus on a reader thread of its own, joined before
+ * refreshAll returns, so the read phase takes as long as the slowest bus instead of the sum of all
+ * buses. The read phase time (critical path) and the sum of the bus times are logged to compare.
+ */
+public final class CanBusSignalRegistry {
+
+    private static final double WAIT_TIMEOUT = 0.010; // seconds
+    private static final long JOIN_TIMEOUT_MS = 50; // a bus waits at most WAIT_TIMEOUT
+
+    private static final Map<String, BusGroup> buses = new LinkedHashMap<>();
+    private static volatile boolean active = false;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "CanBusRead-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static boolean parallel = true;
+    // Reader threads report the round they refreshed for under this lock, refreshAll waits on it
+    private static final Object joinLock = new Object();
+    private static long round = 0;
+    private static double lastReadPhaseTime = 0.0;
+    private static double lastBusTimeSum = 0.0;
+    private static boolean lastJoinTimedOut = false;
+
+    private static final String READ_PHASE_KEY = "CanBus/ReadPhase/CriticalPathMs";
+    private static final String BUS_SUM_KEY = "CanBus/ReadPhase/BusSumMs";
+    private static final String PARALLEL_KEY = "CanBus/ReadPhase/Parallel";
+    private static final String JOIN_TIMED_OUT_KEY = "CanBus/ReadPhase/JoinTimedOut";
+
+    private CanBusSignalRegistry() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    /**
+     * Register (or re-register) the status signals of a motor
+     *
+     * @param motorIO Motor interface
+     * @param config Motor configuration, used for the bus name and synchronization mode
+     */
+    public static void register(MotorIO motorIO, MotorConfig config) {
+        register(motorIO, config, motorIO.getStatusSignals());
+    }
+
+    /**
+     * Register (or re-register) a subset of the status signals of a motor
+     *
+     * @param motorIO Motor interface
+     * @param config Motor configuration, used for the bus name and synchronization mode
+     * @param signals Signals refreshed by the registry for this motor
+     */
+    public static synchronized void register(MotorIO motorIO, MotorConfig config,
+            List<? extends BaseStatusSignal> signals) {
+        for (BusGroup group : buses.values()) {
+            group.remove(motorIO);
+        }
+        buses.computeIfAbsent(config.canbus, BusGroup::new)
+                .put(motorIO, signals, config.isInnerSyncronized);
+    }
+
+    /**
+     * Remove a motor from the registry
+     */
+    public static synchronized void unregister(MotorIO motorIO) {
+        for (BusGroup group : buses.values()) {
+            group.remove(motorIO);
+        }
+    }
+
+    /**
+     * Refresh every registered bus once. This should be called once per loop, before any
+     * updateInputs call (e.g. at the start of robotPeriodic)
+     */
+    public static synchronized void refreshAll() {
+        active = true;
+        long start = System.nanoTime();
+        lastJoinTimedOut = false;
+        if (parallel && buses.size() > 1) {
+            refreshInParallel();
+        } else {
+            for (BusGroup group : buses.values()) {
+                group.refresh();
+            }
+        }
+        lastReadPhaseTime = (System.nanoTime() - start) / 1e9;
+
+        lastBusTimeSum = 0.0;
+        for (BusGroup group : buses.values()) {
+            group.log();
+            lastBusTimeSum += group.lastRefreshTime;
+        }
+        Logger.recordOutput(READ_PHASE_KEY, lastReadPhaseTime * 1000.0);
+        Logger.recordOutput(BUS_SUM_KEY, lastBusTimeSum * 1000.0);
+        Logger.recordOutput(PARALLEL_KEY, parallel);
+        Logger.recordOutput(JOIN_TIMED_OUT_KEY, lastJoinTimedOut);
+    }
+
+    private static void refreshInParallel() {
+        long current = ++round;
+        BusGroup first = null;
+        for (BusGroup group : buses.values()) {
+            if (first == null) {
+                first = group;
+            } else if (group.running.compareAndSet(false, true)) {
+                group.requestedRound = current;
+                readers.execute(group.refreshTask);
+            }
+            // else still refreshing after a timed out join, it reports its time next loop
+        }
+        first.refresh();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(JOIN_TIMEOUT_MS);
+        synchronized (joinLock) {
+            try {
+                while (!isRoundDone(current)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        lastJoinTimedOut = true;
+                        return;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(joinLock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Whether every bus submitted in a round reported it. A task still running from an earlier
+     * round reports that round, so it can not be taken for the current one
+     */
+    private static boolean isRoundDone(long current) {
+        for (BusGroup group : buses.values()) {
+            if (group.requestedRound == current && group.completedRound != current) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Refresh the buses at the same time (default) or one after another
+     *
+     * @param enabled true to refresh every bus on its own thread
+     */
+    public static synchronized void setParallel(boolean enabled) {
+        parallel = enabled;
+    }
+
+    /**
+     * Get duration of the last read phase (refreshAll), the critical path over all buses when
+     * they are refreshed in parallel
+     *
+     * @return Duration in seconds
+     */
+    public static synchronized double getLastReadPhaseTime() {
+        return lastReadPhaseTime;
+    }
+
+    /**
+     * Get sum of the last refresh times of all buses, what the read phase takes when the buses are
+     * refreshed one after another
+     *
+     * @return Duration in seconds
+     */
+    public static synchronized double getLastBusTimeSum() {
+        return lastBusTimeSum;
+    }
+
+    /**
+     * Whether the registry is driving the signal refresh. When true, motors must not wait on their
+     * own signals in updateInputs
+     */
+    public static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Get duration of the last refresh of a bus
+     *
+     * @param canbus Bus name
+     * @return Duration in seconds, or 0 if the bus is unknown
+     */
+    public static synchronized double getLastRefreshTime(String canbus) {
+        BusGroup group = buses.get(canbus);
+        return group == null ? 0.0 : group.lastRefreshTime;
+    }
+
+    /**
+     * Get names of all registered buses
+     */
+    public static synchronized List<String> getBusNames() {
+        return new ArrayList<>(buses.keySet());
+    }
+
+    /**
+     * Signals of all motors on one CAN bus
+     */
+    private static class BusGroup {
+        final String canbus;
+        final Map<MotorIO, BaseStatusSignal[]> motorSignals = new LinkedHashMap<>();
+        final Map<MotorIO, Boolean> motorSynchronized = new LinkedHashMap<>();
+        volatile BaseStatusSignal[] signals = new BaseStatusSignal[0];
+        volatile boolean synchronizedWait = false;
+
+        // Written by the reader thread, read after the join
+        volatile StatusCode lastStatus = StatusCode.OK;
+        volatile double lastRefreshTime = 0.0;
+
+        final AtomicBoolean running = new AtomicBoolean(false);
+        // Round each submission is for, and the last round the reader thread finished
+        volatile long requestedRound = 0;
+        volatile long completedRound = 0;
+        final Runnable refreshTask = () -> {
+            long taskRound = requestedRound;
+            try {
+                refresh();
+            } finally {
+                // Report before the next submission is allowed
+                synchronized (joinLock) {
+                    completedRound = taskRound;
+                    joinLock.notifyAll();
+                }
+                running.set(false);
+            }
+        };
+
+        final String refreshTimeKey;
+        final String statusKey;
+        final String signalCountKey;
+
+        BusGroup(String canbus) {
+            this.canbus = canbus;
+            this.refreshTimeKey = "CanBus/" + canbus + "/RefreshMs";
+            this.statusKey = "CanBus/" + canbus + "/Status";
+            this.signalCountKey = "CanBus/" + canbus + "/SignalCount";
+        }
+
+        void put(MotorIO motorIO, List<? extends BaseStatusSignal> motorSignalList, boolean isSynchronized) {
+            motorSignals.put(motorIO, motorSignalList.toArray(new BaseStatusSignal[0]));
+            motorSynchronized.put(motorIO, isSynchronized);
+            rebuild();
+        }
+
+        void remove(MotorIO motorIO) {
+            if (motorSignals.remove(motorIO) != null) {
+                motorSynchronized.remove(motorIO);
+                rebuild();
+            }
+        }
+
+        private void rebuild() {
+            List<BaseStatusSignal> all = new ArrayList<>();
+            for (BaseStatusSignal[] motorSignalArray : motorSignals.values()) {
+                all.addAll(List.of(motorSignalArray));
+            }
+            signals = all.toArray(new BaseStatusSignal[0]);
+            synchronizedWait = motorSynchronized.containsValue(true);
+        }
+
+        void refresh() {
+            long start = System.nanoTime();
+            // The array is replaced, not modified, when motors register
+            BaseStatusSignal[] signals = this.signals;
+            if (signals.length > 0) {
+                lastStatus = synchronizedWait
+                        ? BaseStatusSignal.waitForAll(WAIT_TIMEOUT, signals)
+                        : BaseStatusSignal.refreshAll(signals);
+            }
+            lastRefreshTime = (System.nanoTime() - start) / 1e9;
+        }
+
+        void log() {
+            Logger.recordOutput(refreshTimeKey, lastRefreshTime * 1000.0);
+            Logger.recordOutput(statusKey, lastStatus.toString());
+            Logger.recordOutput(signalCountKey, signals.length);
+        }
+    }
+}
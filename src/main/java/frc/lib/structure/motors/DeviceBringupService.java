@@ -0,0 +1,149 @@
+package frc.lib.structure.motors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.littletonrobotics.junction.Logger;
+
+import com.ctre.phoenix6.StatusCode;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Device bring-up service.
+ * Device configuration (e.g. applying a TalonFXConfiguration) is submitted here instead of blocking
+ * the constructor, runs concurrently on a small bounded pool and is retried while the device
+ * answers with a non-OK {@link StatusCode}. Startup then takes as long as the slowest device
+ * instead of the sum of all of them. Live configuration updates go through the same pool, so they
+ * never block the main loop.
+ */
+public final class DeviceBringupService {
+
+    private static final int THREAD_COUNT = 4;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MS = 20;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+        Thread thread = new Thread(runnable, "DeviceBringup-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Map<String, BringupTask> tasks = new LinkedHashMap<>();
+
+    private DeviceBringupService() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    /**
+     * Submit the bring-up of a device. A pending bring-up of the same device is cancelled
+     *
+     * @param deviceName Unique device name, used for reporting
+     * @param bringup Configuration step, returning the status reported by the device
+     */
+    public static synchronized void submit(String deviceName, Supplier<StatusCode> bringup) {
+        BringupTask previous = tasks.get(deviceName);
+        if (previous != null && previous.future != null) {
+            previous.future.cancel(false);
+        }
+        BringupTask task = new BringupTask(bringup);
+        task.future = executor.submit(task::run);
+        tasks.put(deviceName, task);
+    }
+
+    /**
+     * Whether the bring-up of a device is still queued or running
+     */
+    public static synchronized boolean isPending(String deviceName) {
+        BringupTask task = tasks.get(deviceName);
+        return task != null && !task.done && !task.future.isCancelled();
+    }
+
+    /**
+     * Wait for every submitted bring-up and report per-device timing
+     *
+     * @param timeoutSeconds Maximum time to wait in total
+     * @return true if every device was configured successfully in time
+     */
+    public static boolean awaitAll(double timeoutSeconds) {
+        List<Map.Entry<String, BringupTask>> pending;
+        synchronized (DeviceBringupService.class) {
+            pending = new ArrayList<>(tasks.entrySet());
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + (long) (timeoutSeconds * 1e9);
+        boolean allOk = true;
+        double sumSeconds = 0.0;
+        for (Map.Entry<String, BringupTask> entry : pending) {
+            String name = entry.getKey();
+            BringupTask task = entry.getValue();
+            try {
+                task.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (Exception e) {
+                // Timed out, cancelled or failed: reported below with the last status
+            }
+
+            boolean ok = task.done && task.status.isOK();
+            if (!ok) {
+                allOk = false;
+                DriverStation.reportWarning("Bring-up of " + name + " failed after " + task.attempts
+                        + " attempts: " + task.status, false);
+            }
+            sumSeconds += task.durationSeconds;
+            Logger.recordOutput("Bringup/" + name + "/Milliseconds", task.durationSeconds * 1000.0);
+            Logger.recordOutput("Bringup/" + name + "/Attempts", task.attempts);
+            Logger.recordOutput("Bringup/" + name + "/Status", task.status.toString());
+        }
+
+        Logger.recordOutput("Bringup/WaitMilliseconds", (System.nanoTime() - start) / 1e6);
+        Logger.recordOutput("Bringup/SumMilliseconds", sumSeconds * 1000.0);
+        Logger.recordOutput("Bringup/AllOk", allOk);
+        return allOk;
+    }
+
+    /**
+     * One device bring-up with retries
+     */
+    private static class BringupTask {
+        final Supplier<StatusCode> bringup;
+        Future<?> future;
+
+        volatile StatusCode status = StatusCode.StatusCodeNotInitialized;
+        volatile int attempts = 0;
+        volatile double durationSeconds = 0.0;
+        volatile boolean done = false;
+
+        BringupTask(Supplier<StatusCode> bringup) {
+            this.bringup = bringup;
+        }
+
+        void run() {
+            long start = System.nanoTime();
+            try {
+                while (attempts < MAX_ATTEMPTS) {
+                    attempts++;
+                    status = bringup.get();
+                    if (status.isOK()) {
+                        break;
+                    }
+                    Thread.sleep(RETRY_DELAY_MS * attempts);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                durationSeconds = (System.nanoTime() - start) / 1e9;
+                done = true;
+            }
+        }
+    }
+}
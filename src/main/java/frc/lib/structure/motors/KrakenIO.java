@@ -5,24 +5,35 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.littletonrobotics.junction.AutoLog;
+import org.littletonrobotics.junction.Logger;
 
 import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.StatusSignal.SignalMeasurement;
 import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.controls.DynamicMotionMagicTorqueCurrentFOC;
+import com.ctre.phoenix6.controls.Follower;
+import com.ctre.phoenix6.controls.MotionMagicExpoTorqueCurrentFOC;
+import com.ctre.phoenix6.controls.MotionMagicTorqueCurrentFOC;
 import com.ctre.phoenix6.controls.PositionTorqueCurrentFOC;
+import com.ctre.phoenix6.controls.TorqueCurrentFOC;
 import com.ctre.phoenix6.controls.VelocityTorqueCurrentFOC;
+import com.ctre.phoenix6.controls.VoltageOut;
 import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.GravityTypeValue;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import com.fasterxml.jackson.databind.JsonSerializable.Base;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.units.measure.Angle;
 import edu.wpi.first.units.measure.AngularAcceleration;
 import edu.wpi.first.units.measure.AngularVelocity;
 import edu.wpi.first.units.measure.Current;
 import edu.wpi.first.units.measure.Temperature;
 import edu.wpi.first.units.measure.Voltage;
+import edu.wpi.first.wpilibj.RobotController;
 
 public class KrakenIO implements MotorIO{
     TalonFX motor;
@@ -37,6 +48,47 @@ public class KrakenIO implements MotorIO{
     StatusSignal<Temperature> temperature;
     PositionTorqueCurrentFOC positionTorqueCurrentFOC=new PositionTorqueCurrentFOC(0.);
     VelocityTorqueCurrentFOC velocityTorqueCurrentFOC=new VelocityTorqueCurrentFOC(0.);
+    MotionMagicTorqueCurrentFOC motionMagicTorqueCurrentFOC=new MotionMagicTorqueCurrentFOC(0.);
+    MotionMagicExpoTorqueCurrentFOC motionMagicExpoTorqueCurrentFOC=new MotionMagicExpoTorqueCurrentFOC(0.);
+    DynamicMotionMagicTorqueCurrentFOC dynamicMotionMagicTorqueCurrentFOC=new DynamicMotionMagicTorqueCurrentFOC(0., 0., 0., 0.);
+    VoltageOut voltageOut=new VoltageOut(0.);
+    TorqueCurrentFOC torqueCurrentFOC=new TorqueCurrentFOC(0.);
+    // signals refreshed by the main loop (all of them unless high-rate sampling owns some)
+    BaseStatusSignal[] mainLoopSignals;
+    // high-rate sampling
+    MotorSampleQueue sampleQueue;
+    boolean hasSample;
+    double lastSampleTimestamp;
+    double lastSamplePosition;
+    double lastSampleVelocity;
+    double lastSampleCurrent;
+    // latency compensation
+    static final double MAX_COMPENSATED_LATENCY = 0.100; // seconds
+    boolean latencyCompensation;
+    // control request deduplication
+    MotorRequestCache requestCache;
+    String framesSentKey;
+    String framesSkippedKey;
+    // configuration the device should have, applied on the bring-up threads
+    static final double DELTA_APPLY_TIMEOUT = 0.050; // seconds
+    volatile TalonFXConfiguration targetConfiguration;
+    volatile SignalProfile targetProfile;
+    // serializes the bring-up threads applying to this device
+    final Object applyLock = new Object();
+    // groups the device confirmed, null until the full configuration was applied
+    TalonFXConfiguration appliedConfiguration;
+    SignalProfile appliedProfile;
+    List<String> appliedGroups = new ArrayList<>();
+    List<String> failedGroups = new ArrayList<>();
+    StatusCode applyStatus = StatusCode.OK;
+    // result of the last apply, logged by the main loop
+    volatile String configDeltaApplied = "";
+    volatile String configDeltaFailed = "";
+    volatile double configDeltaMs = 0.;
+    volatile boolean configDeltaUpdated = false;
+    // leader followed on the device, followed again when the device is recreated
+    MotorIO followedLeader;
+    boolean followOpposed;
     public MotorInputs inputs=new MotorInputs();
     public KrakenIO(MotorConfig config) {
         setConfig(config);
@@ -44,20 +96,192 @@ public class KrakenIO implements MotorIO{
 
     @Override
     public void set(MotorRequest request) {
-        if(!Double.isNaN(request.position))
-        motor.setControl(positionTorqueCurrentFOC.withPosition(request.position/ (2. * Math.PI))
-                .withVelocity(request.velocity/ (2. * Math.PI))
-                .withFeedForward(request.feedforward*config.kT));
-        else
-        motor.setControl(velocityTorqueCurrentFOC.withVelocity(request.velocity/ (2. * Math.PI)).withAcceleration(request.acceleration/ (2. * Math.PI))
-                .withFeedForward(request.feedforward*config.kT));
-        
+        followedLeader = null;
+        // the frame counters are logged in updateInputs, set must not allocate
+        if(!requestCache.shouldSend(request, RobotController.getFPGATime() / 1e6))
+            return;
+        switch(request.controlMode){
+            // profiles are generated on the motor controller at 1 kHz
+            case MOTION_MAGIC:
+                motor.setControl(motionMagicTorqueCurrentFOC.withPosition(request.position/ (2. * Math.PI))
+                        .withFeedForward(request.feedforward*config.kT));
+                break;
+            case MOTION_MAGIC_EXPO:
+                motor.setControl(motionMagicExpoTorqueCurrentFOC.withPosition(request.position/ (2. * Math.PI))
+                        .withFeedForward(request.feedforward*config.kT));
+                break;
+            case DYNAMIC_MOTION_MAGIC:
+                motor.setControl(dynamicMotionMagicTorqueCurrentFOC.withPosition(request.position/ (2. * Math.PI))
+                        .withVelocity(request.maxVelocity/ (2. * Math.PI))
+                        .withAcceleration(request.maxAcceleration/ (2. * Math.PI))
+                        .withJerk(request.maxJerk/ (2. * Math.PI))
+                        .withFeedForward(request.feedforward*config.kT));
+                break;
+            // open loop, used for characterization
+            case VOLTAGE:
+                motor.setControl(voltageOut.withOutput(request.output).withEnableFOC(config.enabledFOC));
+                break;
+            case TORQUE_CURRENT:
+                motor.setControl(torqueCurrentFOC.withOutput(request.output));
+                break;
+            default:
+                if(!Double.isNaN(request.position))
+                motor.setControl(positionTorqueCurrentFOC.withPosition(request.position/ (2. * Math.PI))
+                        .withVelocity(request.velocity/ (2. * Math.PI))
+                        .withFeedForward(request.feedforward*config.kT));
+                else
+                motor.setControl(velocityTorqueCurrentFOC.withVelocity(request.velocity/ (2. * Math.PI)).withAcceleration(request.acceleration/ (2. * Math.PI))
+                        .withFeedForward(request.feedforward*config.kT));
+                break;
+        }
+    }
+    @Override
+    public MotorConfig getConfig() {
+        return config;
+    }
+    @Override
+    public void follow(MotorIO leader, boolean opposeLeader) {
+        // sent once, the device keeps following until another control request arrives
+        motor.setControl(new Follower(leader.getConfig().ID, opposeLeader));
+        requestCache.invalidate();
+        followedLeader = leader;
+        followOpposed = opposeLeader;
     }
     @Override
     public void setConfig(MotorConfig config) {
-        motor=new TalonFX(config.ID, config.canbus);
+        boolean sameDevice = motor != null && this.config != null
+                && config.ID == this.config.ID && config.canbus.equals(this.config.canbus);
+        // the sampler of the previous bus keeps polling our signals until it is told otherwise
+        if(sampleQueue != null && (!config.highRateSampling || !config.canbus.equals(this.config.canbus))){
+            MotorSamplingThread.forBus(this.config.canbus).unregister(this);
+            sampleQueue = null;
+            hasSample = false;
+        }
         this.config=config;
-        var talonFXConfigurator= motor.getConfigurator();
+        this.latencyCompensation=config.latencyCompensation;
+        if(requestCache == null)
+            requestCache = new MotorRequestCache(config);
+        else
+            requestCache.configure(config);
+        framesSentKey = "Motor/" + config.name + "/FramesSent";
+        framesSkippedKey = "Motor/" + config.name + "/FramesSkipped";
+        if(!sameDevice)
+            createDevice();
+        targetConfiguration = buildConfiguration(config);
+        targetProfile = CanBusBudgeter.getBudgetedProfile(config);
+        // apply off the main loop, concurrently with the other devices
+        DeviceBringupService.submit(config.name, this::applyConfiguration);
+        CanBusBudgeter.register(this, config);
+        if(config.highRateSampling){
+            // the sampling thread owns position, velocity and supply current from now on
+            sampleQueue = MotorSamplingThread.forBus(config.canbus).register(this, targetProfile.position, position, velocity, supplyCurrent);
+            hasSample = false;
+            mainLoopSignals = new BaseStatusSignal[]{appliedVolts, torqueCurrent, acceleration, temperature};
+        }
+        else{
+            mainLoopSignals = new BaseStatusSignal[]{position, velocity, appliedVolts, supplyCurrent, torqueCurrent, acceleration, temperature};
+        }
+        CanBusSignalRegistry.register(this, config, List.of(mainLoopSignals));
+    }
+    /**
+     * Create the device and its signals, closing the previous device after the ID or bus changed.
+     * The new device is configured from scratch and follows the same leader
+     */
+    private void createDevice() {
+        synchronized(applyLock){
+            if(motor != null)
+                motor.close();
+            motor=new TalonFX(config.ID, config.canbus);
+            position = motor.getPosition();
+            referenceSignalPosition=position.getDataCopy();
+            velocity = motor.getVelocity();
+            appliedVolts = motor.getMotorVoltage();
+            supplyCurrent = motor.getSupplyCurrent();
+            torqueCurrent = motor.getTorqueCurrent();
+            acceleration = motor.getAcceleration();
+            temperature = motor.getDeviceTemp();
+            appliedConfiguration = null;
+            appliedProfile = null;
+        }
+        requestCache.invalidate();
+        if(followedLeader != null)
+            motor.setControl(new Follower(followedLeader.getConfig().ID, followOpposed));
+    }
+    /**
+     * Bring the device to the target configuration and signal rates. The first time the full
+     * configuration is applied, afterwards only the groups that differ from what the device
+     * confirmed, so a group that failed stays pending and is applied again by the next call (and
+     * by the bring-up retries). Runs on the bring-up threads
+     *
+     * @return first non-OK status, or OK
+     */
+    private StatusCode applyConfiguration() {
+        synchronized(applyLock){
+            long start = System.nanoTime();
+            TalonFXConfiguration target = targetConfiguration;
+            SignalProfile profile = targetProfile;
+            var talonFXConfigurator= motor.getConfigurator();
+            appliedGroups.clear();
+            failedGroups.clear();
+            applyStatus = StatusCode.OK;
+            if(appliedConfiguration == null){
+                if(report("All", talonFXConfigurator.apply(target))){
+                    appliedConfiguration = new TalonFXConfiguration();
+                    appliedConfiguration.Slot0 = target.Slot0;
+                    appliedConfiguration.MotionMagic = target.MotionMagic;
+                    appliedConfiguration.Feedback = target.Feedback;
+                    appliedConfiguration.MotorOutput = target.MotorOutput;
+                    appliedConfiguration.CurrentLimits = target.CurrentLimits;
+                }
+            }
+            else{
+                if(!target.Slot0.serialize().equals(appliedConfiguration.Slot0.serialize())
+                        && report("Slot0", talonFXConfigurator.apply(target.Slot0, DELTA_APPLY_TIMEOUT)))
+                    appliedConfiguration.Slot0 = target.Slot0;
+                if(!target.MotionMagic.serialize().equals(appliedConfiguration.MotionMagic.serialize())
+                        && report("MotionMagic", talonFXConfigurator.apply(target.MotionMagic, DELTA_APPLY_TIMEOUT)))
+                    appliedConfiguration.MotionMagic = target.MotionMagic;
+                if(!target.Feedback.serialize().equals(appliedConfiguration.Feedback.serialize())
+                        && report("Feedback", talonFXConfigurator.apply(target.Feedback, DELTA_APPLY_TIMEOUT)))
+                    appliedConfiguration.Feedback = target.Feedback;
+                if(!target.MotorOutput.serialize().equals(appliedConfiguration.MotorOutput.serialize())
+                        && report("MotorOutput", talonFXConfigurator.apply(target.MotorOutput, DELTA_APPLY_TIMEOUT)))
+                    appliedConfiguration.MotorOutput = target.MotorOutput;
+                if(!target.CurrentLimits.serialize().equals(appliedConfiguration.CurrentLimits.serialize())
+                        && report("CurrentLimits", talonFXConfigurator.apply(target.CurrentLimits, DELTA_APPLY_TIMEOUT)))
+                    appliedConfiguration.CurrentLimits = target.CurrentLimits;
+            }
+            // signal rates only once the device accepted its configuration
+            if(appliedConfiguration != null
+                    && (appliedProfile == null || !profile.toString().equals(appliedProfile.toString()))
+                    && report("Signals", configureSignals(profile)))
+                appliedProfile = profile;
+            configDeltaApplied = String.join(",", appliedGroups);
+            configDeltaFailed = String.join(",", failedGroups);
+            configDeltaMs = (System.nanoTime() - start) / 1e6;
+            configDeltaUpdated = true;
+            return applyStatus;
+        }
+    }
+    /**
+     * Record the result of applying one group
+     *
+     * @return whether the group was applied
+     */
+    private boolean report(String group, StatusCode status) {
+        if(status.isOK()){
+            appliedGroups.add(group);
+            return true;
+        }
+        failedGroups.add(group);
+        if(applyStatus.isOK())
+            applyStatus = status;
+        return false;
+    }
+    /**
+     * Build the device configuration from a motor configuration
+     */
+    private static TalonFXConfiguration buildConfiguration(MotorConfig config) {
         var talonFXConfigs=new TalonFXConfiguration();
         talonFXConfigs.Slot0.kP = config.kP;
         talonFXConfigs.Slot0.kI = config.kI;
@@ -66,8 +290,14 @@ public class KrakenIO implements MotorIO{
         talonFXConfigs.Slot0.kG = config.kG;
         talonFXConfigs.Slot0.kV = config.kV;
         talonFXConfigs.Slot0.kA = config.kA;
-        talonFXConfigs.MotionMagic.MotionMagicAcceleration = config.maxAcc;
-        talonFXConfigs.MotionMagic.MotionMagicCruiseVelocity = config.maxVel;
+        talonFXConfigs.Slot0.GravityType = config.gravityType == MotorConfig.GravityType.ARM_COSINE
+                ? GravityTypeValue.Arm_Cosine : GravityTypeValue.Elevator_Static;
+        // profile constraints are in radians like the requests, the device expects rotations
+        talonFXConfigs.MotionMagic.MotionMagicAcceleration = config.maxAcc / (2. * Math.PI);
+        talonFXConfigs.MotionMagic.MotionMagicCruiseVelocity = config.maxVel / (2. * Math.PI);
+        talonFXConfigs.MotionMagic.MotionMagicJerk = config.maxJerk / (2. * Math.PI);
+        talonFXConfigs.MotionMagic.MotionMagicExpo_kV = config.motionMagicExpoKV;
+        talonFXConfigs.MotionMagic.MotionMagicExpo_kA = config.motionMagicExpoKA;
         talonFXConfigs.Feedback.SensorToMechanismRatio = config.gearRatio;
         talonFXConfigs.MotorOutput.Inverted = config.reversed? InvertedValue.Clockwise_Positive : InvertedValue.CounterClockwise_Positive;
         talonFXConfigs.MotorOutput.NeutralMode = config.isBreak ? NeutralModeValue.Brake : NeutralModeValue.Coast;
@@ -76,31 +306,96 @@ public class KrakenIO implements MotorIO{
         talonFXConfigs.CurrentLimits.SupplyCurrentLowerTime = config.supplyCurrentLimitLowerTime;
         talonFXConfigs.CurrentLimits.StatorCurrentLimitEnable= config.statorCurrentLimitEnabled ;
         talonFXConfigs.CurrentLimits.StatorCurrentLimit= config.statorCurrentLimit ;
-        talonFXConfigurator.apply(talonFXConfigs);
-        position = motor.getPosition();
-        referenceSignalPosition=position.getDataCopy();
-        velocity = motor.getVelocity();
-        appliedVolts = motor.getMotorVoltage();
-        supplyCurrent = motor.getSupplyCurrent();
-        torqueCurrent = motor.getTorqueCurrent();
-        acceleration = motor.getAcceleration();
-        temperature = motor.getDeviceTemp();
-        BaseStatusSignal.setUpdateFrequencyForAll(config.updateFrequency, position, velocity, appliedVolts, supplyCurrent, torqueCurrent, acceleration,temperature);
-        // BaseStatusSignal.waitForAll(0, null)
-        // motor.optimizeBusUtilization();
+        return talonFXConfigs;
+    }
+    @Override
+    public void applySignalProfile(SignalProfile profile) {
+        targetProfile = profile;
+        DeviceBringupService.submit(config.name, this::applyConfiguration);
+        // the sampler would time out waiting on downgraded signals
+        if(sampleQueue != null)
+            MotorSamplingThread.forBus(config.canbus).setFrequency(this, profile.position);
+    }
+    /**
+     * Set the signal rates of a profile and disable every other status signal
+     * 
+     * @return first non-OK status, or OK
+     */
+    private StatusCode configureSignals(SignalProfile profile) {
+        StatusCode[] results = {
+            position.setUpdateFrequency(profile.position),
+            velocity.setUpdateFrequency(profile.velocity),
+            acceleration.setUpdateFrequency(profile.acceleration),
+            torqueCurrent.setUpdateFrequency(profile.torqueCurrent),
+            supplyCurrent.setUpdateFrequency(profile.supplyCurrent),
+            appliedVolts.setUpdateFrequency(profile.appliedVolts),
+            temperature.setUpdateFrequency(profile.temperature),
+            // disable every status signal that was not given a frequency above
+            motor.optimizeBusUtilization()
+        };
+        for (StatusCode result : results) {
+            if (!result.isOK())
+                return result;
+        }
+        return StatusCode.OK;
     }
     @Override
     public void updateInputs(MotorInputs inputs) {
-        
+        if(configDeltaUpdated){
+            // AdvantageKit is not thread safe, results of the bring-up threads are logged here
+            configDeltaUpdated = false;
+            Logger.recordOutput("Motor/" + config.name + "/ConfigDelta/Applied", configDeltaApplied);
+            Logger.recordOutput("Motor/" + config.name + "/ConfigDelta/Failed", configDeltaFailed);
+            Logger.recordOutput("Motor/" + config.name + "/ConfigDelta/Ms", configDeltaMs);
+        }
+        Logger.recordOutput(framesSentKey, requestCache.getFramesSent());
+        Logger.recordOutput(framesSkippedKey, requestCache.getFramesSkipped());
         inputs.connected = motor.isConnected();
-        if(config.isInnerSyncronized)
-            BaseStatusSignal.waitForAll(0.010, position, velocity, appliedVolts, supplyCurrent, torqueCurrent, acceleration, temperature);
-        inputs.position = position.getValueAsDouble();
-        inputs.velocity = velocity.getValueAsDouble();
-        inputs.current = supplyCurrent.getValueAsDouble();
+        // When the bus registry is active it has already refreshed these signals this loop
+        if(config.isInnerSyncronized && !CanBusSignalRegistry.isActive())
+            BaseStatusSignal.waitForAll(0.010, mainLoopSignals);
+        if(sampleQueue != null){
+            int count = sampleQueue.drainTo(inputs);
+            if(count > 0){
+                hasSample = true;
+                lastSampleTimestamp = inputs.sampleTimestamps[count - 1];
+                lastSamplePosition = inputs.samplePositions[count - 1];
+                lastSampleVelocity = inputs.sampleVelocities[count - 1];
+                lastSampleCurrent = inputs.sampleCurrents[count - 1];
+            }
+        }
+        else
+            inputs.sampleCount = 0;
+        if(hasSample){
+            inputs.position = lastSamplePosition;
+            inputs.velocity = lastSampleVelocity;
+            inputs.current = lastSampleCurrent;
+            inputs.latency = RobotController.getFPGATime() / 1e6 - lastSampleTimestamp;
+        }
+        else{
+            // No sampling, or no sample drained yet: the last values the signals were refreshed to
+            inputs.position = position.getValueAsDouble();
+            inputs.velocity = velocity.getValueAsDouble();
+            inputs.current = supplyCurrent.getValueAsDouble();
+            inputs.latency=position.getAllTimestamps().getBestTimestamp().getLatency();
+        }
+        inputs.torqueCurrent = torqueCurrent.getValueAsDouble();
         inputs.acceleration = acceleration.getValueAsDouble();
         inputs.temperature=temperature.getValueAsDouble();
-        inputs.latency=position.getAllTimestamps().getBestTimestamp().getLatency();
+        compensateLatency(inputs);
+    }
+    /**
+     * Extrapolate position and velocity to the current time with the already read velocity and
+     * acceleration (same idea as BaseStatusSignal.getLatencyCompensatedValue, but second order)
+     */
+    private void compensateLatency(MotorInputs inputs) {
+        double latency = latencyCompensation ? MathUtil.clamp(inputs.latency, 0., MAX_COMPENSATED_LATENCY) : 0.;
+        inputs.compensatedPosition = inputs.position + inputs.velocity * latency + 0.5 * inputs.acceleration * latency * latency;
+        inputs.compensatedVelocity = inputs.velocity + inputs.acceleration * latency;
+    }
+    @Override
+    public void setLatencyCompensation(boolean enabled) {
+        latencyCompensation = enabled;
     }
     @Override
         public
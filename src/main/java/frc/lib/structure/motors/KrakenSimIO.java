@@ -6,213 +6,209 @@ import org.littletonrobotics.junction.Logger;
 
 import com.ctre.phoenix6.StatusSignal;
 
-import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
 
 /**
  * Simulated Kraken motor implementation for testing and simulation
  * Uses simplified physics model and AdvantageKit logging
+ *
+ * The motor is a view over one index of a {@link SimMotorWorld}, which stores the state of all
+ * simulated motors in primitive columns and steps them together in fixed substeps driven by the
+ * (simulated) FPGA timestamp, so results only depend on simulated time and not on how fast or how
+ * regularly the host runs the loop.
+ *
+ * The motor is modeled on {@link DCMotor#getKrakenX60Foc(int)}: the requested torque current is
+ * limited by the stator limit, by the back-EMF at the battery voltage and by the supply limit
+ * (converted from stator current through the output voltage). The load inertia is set by the
+ * owning mechanism through {@link #setLoadInertia(double)}.
  */
 public class KrakenSimIO implements MotorIO {
 
     private MotorConfig config;
     private MotorInputs inputs = new MotorInputs();
 
-    // Simulation state
-    private double position = 0.0;
-    private double velocity = 0.0;
-    private double acceleration = 0.0;
-    private double current = 0.0;
-    private double temperature = 25.0;
-    private double lastTime = 0.0;
-
-    // Control inputs
-    private double targetPosition = 0.0;
-    private double targetVelocity = 0.0;
-    private double targetAcceleration = 0.0;
-    private double feedforward = 0.0;
-
-    // PID controller for position control
-    private double positionError = 0.0;
-    private double velocityError = 0.0;
-    private double integralError = 0.0;
-    private double lastError = 0.0;
-
-    // Simulation parameters
-    private static final double SIMULATION_DT = 0.02; // 20ms
-    private static final double MAX_VOLTAGE = 12.0;
-    private static final double MIN_VOLTAGE = -12.0;
-    private static final double MOTOR_RESISTANCE = 0.1; // ohms
-    private static final double MOTOR_KV = 100.0; // RPM/volt
-    private static final double MOTOR_KT = 0.1; // Nm/amp
+    private final SimMotorWorld world;
+    private final int index;
+    private KrakenSimIO leader = null;
+    private LogKeys keys;
 
     public KrakenSimIO(MotorConfig config) {
+        this(config, SimMotorWorld.getDefault());
+    }
+
+    /**
+     * Create a simulated motor in a given world (e.g. a manual world for headless runs)
+     *
+     * @param config Motor configuration
+     * @param world World holding the motor state
+     */
+    public KrakenSimIO(MotorConfig config, SimMotorWorld world) {
+        this.world = world;
+        this.index = world.add();
         setConfig(config);
     }
 
     @Override
     public void setConfig(MotorConfig config) {
         this.config = config;
+        this.keys = new LogKeys(config.name);
 
         // Initialize simulation state
-        lastTime = System.currentTimeMillis() / 1000.0;
-        position = 0.0;
-        velocity = 0.0;
-        acceleration = 0.0;
-        current = 0.0;
-        temperature = 25.0;
+        world.configure(index, config);
+        world.resetState(index);
 
         Logger.recordOutput("Motor/" + config.name + "/Config", config.toString());
     }
 
     @Override
-    public void set(MotorRequest request) {
-        targetPosition = request.position;
-        targetVelocity = request.velocity;
-        targetAcceleration = request.acceleration;
-        feedforward = request.feedforward;
-
-        // Log control inputs
-        Logger.recordOutput("Motor/" + config.name + "/TargetPosition", targetPosition);
-        Logger.recordOutput("Motor/" + config.name + "/TargetVelocity", targetVelocity);
-        Logger.recordOutput("Motor/" + config.name + "/TargetAcceleration", targetAcceleration);
-        Logger.recordOutput("Motor/" + config.name + "/Feedforward", feedforward);
+    public void follow(MotorIO leader, boolean opposeLeader) {
+        if (!(leader instanceof KrakenSimIO) || ((KrakenSimIO) leader).world != world) {
+            throw new IllegalArgumentException("A simulated motor can only follow another simulated motor of the same world");
+        }
+        this.leader = (KrakenSimIO) leader;
+        world.setLeader(index, this.leader.index, opposeLeader);
     }
 
     @Override
-    public void updateInputs(MotorInputs inputs) {
-        double currentTime = System.currentTimeMillis() / 1000.0;
-        double dt = currentTime - lastTime;
-
-        if (dt < SIMULATION_DT) {
-            // Not enough time has passed, return current state
-            return;
+    public void set(MotorRequest request) {
+        // A request of its own ends following, like on the device
+        if (leader != null) {
+            world.setLeader(index, -1, false);
+            leader = null;
+        }
+        world.feedforward[index] = request.feedforward;
+        switch (request.controlMode) {
+            case MOTION_MAGIC:
+            case MOTION_MAGIC_EXPO:
+            case DYNAMIC_MOTION_MAGIC:
+                // Like the device, a new profile starts from the current state
+                if (!world.profileActive[index]) {
+                    world.profilePosition[index] = world.position[index];
+                    world.profileVelocity[index] = world.velocity[index];
+                    world.profileActive[index] = true;
+                }
+                world.goalPosition[index] = request.position;
+                world.mode[index] = request.controlMode == MotorRequest.ControlMode.MOTION_MAGIC_EXPO
+                        ? SimMotorWorld.MODE_MOTION_MAGIC_EXPO
+                        : SimMotorWorld.MODE_MOTION_MAGIC;
+                if (request.controlMode == MotorRequest.ControlMode.DYNAMIC_MOTION_MAGIC) {
+                    world.profileMaxVelocity[index] = request.maxVelocity;
+                    world.profileMaxAcceleration[index] = request.maxAcceleration;
+                } else {
+                    world.profileMaxVelocity[index] = config.maxVel;
+                    world.profileMaxAcceleration[index] = config.maxAcc;
+                }
+                break;
+            case VOLTAGE:
+            case TORQUE_CURRENT:
+                world.mode[index] = request.controlMode == MotorRequest.ControlMode.VOLTAGE
+                        ? SimMotorWorld.MODE_VOLTAGE
+                        : SimMotorWorld.MODE_TORQUE_CURRENT;
+                world.profileActive[index] = false;
+                world.openLoopOutput[index] = request.output;
+                break;
+            default:
+                world.mode[index] = SimMotorWorld.MODE_DEFAULT;
+                world.profileActive[index] = false;
+                world.targetPosition[index] = request.position;
+                world.targetVelocity[index] = request.velocity;
+                world.targetAcceleration[index] = request.acceleration;
+                break;
         }
+        // Control inputs are logged once per loop in updateInputs: set runs in the control path,
+        // which must not allocate, and recordOutput boxes its value while the logger is running
+    }
 
-        // Calculate control output (desired current in FOC)
-        double desiredCurrent = calculateControlOutput();
+    @Override
+    public void updateInputs(MotorInputs inputs) {
+        world.update();
 
-        // Apply current control to motor simulation
-        // In FOC, we directly control the current (torque current)
-        simulateMotor(desiredCurrent, dt);
+        // Followers mirror the leader (mirrored if opposed), the leader has simulated the load
+        int source = leader != null ? leader.index : index;
+        double direction = leader != null ? world.leaderDirection[index] : 1.0;
 
-        // Update inputs
         inputs.connected = true;
-        inputs.position = position;
-        inputs.velocity = velocity;
-        inputs.acceleration = acceleration;
-        inputs.current = current;
-        inputs.temperature = temperature;
-        inputs.latency = dt * 1000.0; // Convert to milliseconds
-
-        // Update last time
-        lastTime = currentTime;
+        inputs.position = direction * world.position[source];
+        inputs.velocity = direction * world.velocity[source];
+        inputs.acceleration = direction * world.acceleration[source];
+        inputs.current = direction * world.current[source];
+        inputs.torqueCurrent = inputs.current;
+        inputs.temperature = world.temperature[source];
+        inputs.latency = world.getStateAge() * 1000.0; // Age of the state in milliseconds
+        // Simulated state is never stale, so compensation is the identity
+        inputs.compensatedPosition = inputs.position;
+        inputs.compensatedVelocity = inputs.velocity;
 
         // Log all motor data
-        logMotorData(inputs, desiredCurrent, desiredCurrent);
+        logMotorData(inputs, source);
     }
 
-    private void simulateMotor(double desiredCurrent, double dt) {
-        // FOC motor simulation: direct current control
-        // In FOC, we directly control the torque current (q-axis current)
-
-        // Apply current limits
-        double maxCurrent = Math.min(config.supplyCurrentLimit, config.statorCurrentLimit);
-        current = MathUtil.clamp(desiredCurrent, -maxCurrent, maxCurrent);
-
-        // Calculate torque from current (FOC: τ = Kt * Iq)
-        double torque = current * MOTOR_KT;
-
-        // Apply gear ratio
-        double outputTorque = torque * config.gearRatio;
-
-        // Calculate load inertia (including motor rotor inertia)
-        double motorInertia = 0.001; // kg⋅m² (typical for Kraken)
-        double loadInertia = 0.1; // kg⋅m²
-        double totalInertia = motorInertia + loadInertia;
-
-        // Calculate acceleration from torque
-        acceleration = outputTorque / totalInertia;
-
-        // Update velocity and position
-        velocity += acceleration * dt;
-        position += velocity * dt;
-
-        // Add viscous damping (friction)
-        double dampingCoefficient = 0.1; // N⋅m⋅s/rad
-        double dampingTorque = -dampingCoefficient * velocity;
-        velocity += (dampingTorque / totalInertia) * dt;
-
-        // Update temperature based on current (simplified thermal model)
-        double thermalResistance = 0.1; // °C/W
-        double powerLoss = current * current * MOTOR_RESISTANCE; // I²R losses
-        double temperatureRise = powerLoss * thermalResistance;
-        temperature = 25.0 + temperatureRise;
+    /**
+     * Advance the world of this motor to a timestamp
+     *
+     * @param timestamp Time in seconds
+     */
+    public void advanceTo(double timestamp) {
+        world.advanceTo(timestamp);
     }
 
-    private double calculateControlOutput() {
-        // Calculate position and velocity errors
-        positionError = targetPosition - position;
-        velocityError = targetVelocity - velocity;
-
-        // Anti-windup for integral term
-        if (Math.abs(positionError) < 0.1) {
-            integralError += positionError * SIMULATION_DT;
-        } else {
-            integralError = 0.0;
-        }
-
-        // Clamp integral term
-        integralError = MathUtil.clamp(integralError, -1.0, 1.0);
-
-        // PID control with velocity feedback
-        // P term: position error
-        // I term: position error integral
-        // D term: velocity error (rate of change of position error)
-        double pidOutput = config.kP * positionError +
-                config.kI * integralError +
-                config.kD * velocityError;
-
-        // Add feedforward and target acceleration
-        // In FOC, this output represents the desired current (torque current)
-        double desiredCurrent = pidOutput + feedforward * config.kT;
-        // + targetAcceleration * 0.1;
-
-        // Update last error for derivative calculation
-        lastError = positionError;
-
-        return desiredCurrent;
+    @Override
+    public void setLoadInertia(double inertia) {
+        world.loadInertia[index] = inertia;
     }
 
-    private void logMotorData(MotorInputs inputs, double desiredCurrent, double controlOutput) {
-        String motorName = config.name;
+    /**
+     * Set the external load at the output shaft of this motor (N⋅m). Forces on a linear mechanism
+     * are converted with {@link MotorConfig#outputRadius}
+     *
+     * @param constantLoad Constant torque, e.g. -m * g * outputRadius for an elevator
+     * @param cosineLoad Amplitude of a torque -cosineLoad * cos(position), e.g. m * g * r for an arm
+     *        that is horizontal at position 0
+     * @param coulombFriction Friction torque opposing the motion
+     */
+    public void setExternalLoad(double constantLoad, double cosineLoad, double coulombFriction) {
+        world.constantLoad[index] = constantLoad;
+        world.cosineLoad[index] = cosineLoad;
+        world.coulombFriction[index] = coulombFriction;
+    }
 
+    private void logMotorData(MotorInputs inputs, int source) {
         // Log motor state
-        Logger.recordOutput("Motor/" + motorName + "/Position", inputs.position);
-        Logger.recordOutput("Motor/" + motorName + "/Velocity", inputs.velocity);
-        Logger.recordOutput("Motor/" + motorName + "/Acceleration", inputs.acceleration);
-        Logger.recordOutput("Motor/" + motorName + "/Current", inputs.current);
-        Logger.recordOutput("Motor/" + motorName + "/Temperature", inputs.temperature);
-        Logger.recordOutput("Motor/" + motorName + "/Latency", inputs.latency);
-        Logger.recordOutput("Motor/" + motorName + "/Connected", inputs.connected);
+        Logger.recordOutput(keys.position, inputs.position);
+        Logger.recordOutput(keys.velocity, inputs.velocity);
+        Logger.recordOutput(keys.acceleration, inputs.acceleration);
+        Logger.recordOutput(keys.current, inputs.current);
+        Logger.recordOutput(keys.supplyCurrent, world.supplyCurrent[source]);
+        Logger.recordOutput(keys.appliedVoltage, world.appliedVoltage[source]);
+        Logger.recordOutput(keys.loadInertia, world.loadInertia[index]);
+        Logger.recordOutput(keys.temperature, inputs.temperature);
+        Logger.recordOutput(keys.latency, inputs.latency);
+        Logger.recordOutput(keys.connected, inputs.connected);
+
+        // Log control inputs
+        Logger.recordOutput(keys.targetPosition, world.targetPosition[index]);
+        Logger.recordOutput(keys.targetVelocity, world.targetVelocity[index]);
+        Logger.recordOutput(keys.targetAcceleration, world.targetAcceleration[index]);
+        Logger.recordOutput(keys.feedforward, world.feedforward[index]);
 
         // Log control data (FOC current control)
-        Logger.recordOutput("Motor/" + motorName + "/DesiredCurrent", desiredCurrent);
-        Logger.recordOutput("Motor/" + motorName + "/ControlOutput", controlOutput);
-        Logger.recordOutput("Motor/" + motorName + "/PositionError", positionError);
-        Logger.recordOutput("Motor/" + motorName + "/VelocityError", velocityError);
-        Logger.recordOutput("Motor/" + motorName + "/IntegralError", integralError);
+        Logger.recordOutput(keys.desiredCurrent, world.desiredCurrent[source]);
+        Logger.recordOutput(keys.controlOutput, world.desiredCurrent[source]);
+        Logger.recordOutput(keys.positionError, world.positionError[source]);
+        Logger.recordOutput(keys.velocityError, world.velocityError[source]);
+        Logger.recordOutput(keys.integralError, world.integralError[source]);
 
         // Log PID gains
-        Logger.recordOutput("Motor/" + motorName + "/kP", config.kP);
-        Logger.recordOutput("Motor/" + motorName + "/kI", config.kI);
-        Logger.recordOutput("Motor/" + motorName + "/kD", config.kD);
-        Logger.recordOutput("Motor/" + motorName + "/GearRatio", config.gearRatio);
+        Logger.recordOutput(keys.kP, config.kP);
+        Logger.recordOutput(keys.kI, config.kI);
+        Logger.recordOutput(keys.kD, config.kD);
+        Logger.recordOutput(keys.gearRatio, config.gearRatio);
 
         // Log motor limits
-        Logger.recordOutput("Motor/" + motorName + "/MaxVelocity", config.maxVel);
-        Logger.recordOutput("Motor/" + motorName + "/MaxAcceleration", config.maxAcc);
-        Logger.recordOutput("Motor/" + motorName + "/SupplyCurrentLimit", config.supplyCurrentLimit);
-        Logger.recordOutput("Motor/" + motorName + "/StatorCurrentLimit", config.statorCurrentLimit);
+        Logger.recordOutput(keys.maxVelocity, config.maxVel);
+        Logger.recordOutput(keys.maxAcceleration, config.maxAcc);
+        Logger.recordOutput(keys.supplyCurrentLimit, config.supplyCurrentLimit);
+        Logger.recordOutput(keys.statorCurrentLimit, config.statorCurrentLimit);
     }
 
     @Override
@@ -233,23 +229,82 @@ public class KrakenSimIO implements MotorIO {
         return config;
     }
 
+    /**
+     * Get the world holding the state of this motor
+     */
+    public SimMotorWorld getWorld() {
+        return world;
+    }
+
     /**
      * Reset simulation state
      */
     public void reset() {
-        position = 0.0;
-        velocity = 0.0;
-        acceleration = 0.0;
-        current = 0.0;
-        temperature = 25.0;
-        lastTime = System.currentTimeMillis() / 1000.0;
-        positionError = 0.0;
-        velocityError = 0.0;
-        integralError = 0.0;
-        lastError = 0.0;
-        targetPosition = 0.0;
-        targetVelocity = 0.0;
-        targetAcceleration = 0.0;
-        feedforward = 0.0;
-    }
-}
\ No newline at end of file
+        world.resetState(index);
+    }
+
+    /**
+     * Log keys of a motor, built once per configuration so logging does not concatenate strings
+     * every loop
+     */
+    private static final class LogKeys {
+        final String targetPosition;
+        final String targetVelocity;
+        final String targetAcceleration;
+        final String feedforward;
+        final String position;
+        final String velocity;
+        final String acceleration;
+        final String current;
+        final String supplyCurrent;
+        final String appliedVoltage;
+        final String loadInertia;
+        final String temperature;
+        final String latency;
+        final String connected;
+        final String desiredCurrent;
+        final String controlOutput;
+        final String positionError;
+        final String velocityError;
+        final String integralError;
+        final String kP;
+        final String kI;
+        final String kD;
+        final String gearRatio;
+        final String maxVelocity;
+        final String maxAcceleration;
+        final String supplyCurrentLimit;
+        final String statorCurrentLimit;
+
+        LogKeys(String name) {
+            String prefix = "Motor/" + name + "/";
+            targetPosition = prefix + "TargetPosition";
+            targetVelocity = prefix + "TargetVelocity";
+            targetAcceleration = prefix + "TargetAcceleration";
+            feedforward = prefix + "Feedforward";
+            position = prefix + "Position";
+            velocity = prefix + "Velocity";
+            acceleration = prefix + "Acceleration";
+            current = prefix + "Current";
+            supplyCurrent = prefix + "SupplyCurrent";
+            appliedVoltage = prefix + "AppliedVoltage";
+            loadInertia = prefix + "LoadInertia";
+            temperature = prefix + "Temperature";
+            latency = prefix + "Latency";
+            connected = prefix + "Connected";
+            desiredCurrent = prefix + "DesiredCurrent";
+            controlOutput = prefix + "ControlOutput";
+            positionError = prefix + "PositionError";
+            velocityError = prefix + "VelocityError";
+            integralError = prefix + "IntegralError";
+            kP = prefix + "kP";
+            kI = prefix + "kI";
+            kD = prefix + "kD";
+            gearRatio = prefix + "GearRatio";
+            maxVelocity = prefix + "MaxVelocity";
+            maxAcceleration = prefix + "MaxAcceleration";
+            supplyCurrentLimit = prefix + "SupplyCurrentLimit";
+            statorCurrentLimit = prefix + "StatorCurrentLimit";
+        }
+    }
+}
@@ -3,11 +3,20 @@ package frc.lib.structure.motors;
 import frc.lib.structure.ConfigIO;
 
 public class MotorConfig implements ConfigIO {
+    public enum GravityType {
+        /** kG is constant (elevators) */
+        ELEVATOR_STATIC,
+        /** kG times the cosine of the position (arms, 0 = horizontal) */
+        ARM_COSINE
+    }
+
     // basic configs
     public String name;
     public int ID;
     public String canbus;
     public double updateFrequency;
+    // per-signal update frequencies, null to use updateFrequency for every signal
+    public SignalProfile signalProfile = null;
 
     // PIDs and FFs
     public double kP = 0;
@@ -17,19 +26,31 @@ public class MotorConfig implements ConfigIO {
     public double kG = 0;
     public double kV = 0;
     public double kA = 0;
+    public GravityType gravityType = GravityType.ELEVATOR_STATIC;
 
     public double kT = 0;
 
     // basic motion profile
     public double maxVel;
     public double maxAcc;
+    public double maxJerk = 0; // 0 disables the jerk limit
+    // exponential motion profile (MotionMagicExpo)
+    public double motionMagicExpoKV = 0.12; // volts per rotation per second
+    public double motionMagicExpoKA = 0.1; // volts per rotation per second squared
 
     // physics
     public double gearRatio = 1.0;
+    // meters of travel per radian of the output shaft (drum radius, or pitch / 2π) when driving a
+    // linear mechanism, whose positions are converted to output radians with it
+    public double outputRadius = 1.0;
     public boolean reversed = false;
     public boolean isBreak = false;
     public boolean continuous = false;
     public boolean isInnerSyncronized = true;
+    // sample position, velocity and current on a background thread at updateFrequency
+    public boolean highRateSampling = false;
+    // extrapolate position and velocity to the current time using the signal latency
+    public boolean latencyCompensation = false;
 
     public double stallTorque = 0;
     public double freeVel = 0;
@@ -47,9 +68,26 @@ public class MotorConfig implements ConfigIO {
     public double statorCurrentLimit = 0;
     public double statorCurrentLimitOffset = 0;
 
+    // control request deduplication
+    public boolean requestDeduplication = true;
+    public double requestPositionEpsilon = 0;
+    public double requestVelocityEpsilon = 0;
+    public double requestAccelerationEpsilon = 0;
+    public double requestFeedforwardEpsilon = 0;
+    public double requestKeepAlivePeriod = 0.05; // seconds
+
     public MotorConfig(String name, int ID, String canbus) {
         this.name = name;
         this.ID = ID;
         this.canbus = canbus;
     }
+
+    /**
+     * Get the signal profile in effect
+     * 
+     * @return signalProfile, or a uniform profile at updateFrequency if none is set
+     */
+    public SignalProfile getSignalProfile() {
+        return signalProfile != null ? signalProfile : SignalProfile.uniform(updateFrequency);
+    }
 }
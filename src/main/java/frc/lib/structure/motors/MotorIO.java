@@ -24,4 +24,44 @@ public interface MotorIO extends sensor<MotorInputs>, actuator<MotorRequest>{
     default void setConfig(MotorConfig config) {
         // Default implementation does nothing
     }
+
+    default MotorConfig getConfig() {
+        return null;
+    }
+
+    /**
+     * Make this motor follow another motor. The follower mirrors the leader until it receives
+     * its own request through set()
+     *
+     * @param leader Motor to follow, must be on the same bus
+     * @param opposeLeader Whether to turn opposite to the leader
+     */
+    default void follow(MotorIO leader, boolean opposeLeader) {
+        // Default implementation does nothing
+    }
+
+    /**
+     * Set the inertia the motor drives at its output shaft (kg⋅m², a linear mechanism reflects its
+     * mass through {@link MotorConfig#outputRadius} as m⋅r²). Only used by simulated motors
+     *
+     * @param inertia Load inertia at the output shaft
+     */
+    default void setLoadInertia(double inertia) {
+        // Default implementation does nothing
+    }
+
+    /**
+     * Enable or disable latency compensation. When enabled, the compensated position and velocity
+     * in {@link MotorInputs} are extrapolated to the current time using the measured latency
+     */
+    default void setLatencyCompensation(boolean enabled) {
+        // Default implementation does nothing
+    }
+
+    /**
+     * Apply per-signal update frequencies
+     */
+    default void applySignalProfile(SignalProfile profile) {
+        // Default implementation does nothing
+    }
 }
@@ -10,18 +10,39 @@ public class MotorInputs extends inputBase implements inputsIO, LoggableInputs {
     public double position;
     public double velocity;
     public double current;
+    public double torqueCurrent; // signed torque producing (stator) current
     public double acceleration;
     public double latency;
     public double temperature;
+    // position and velocity extrapolated to the current time (equal to the raw values when
+    // latency compensation is disabled)
+    public double compensatedPosition;
+    public double compensatedVelocity;
+
+    // High-rate samples since the last update, only the first sampleCount entries are valid
+    // (always 0 unless high-rate sampling is enabled)
+    public int sampleCount;
+    public double[] sampleTimestamps = new double[0];
+    public double[] samplePositions = new double[0];
+    public double[] sampleVelocities = new double[0];
+    public double[] sampleCurrents = new double[0];
 
     public void toLog(LogTable table) {
         table.put("connected", connected);
         table.put("position", position);
         table.put("velocity", velocity);
         table.put("current", current);
+        table.put("torqueCurrent", torqueCurrent);
         table.put("acceleration", acceleration);
         table.put("latency", latency);
         table.put("temperature", temperature);
+        table.put("compensatedPosition", compensatedPosition);
+        table.put("compensatedVelocity", compensatedVelocity);
+        table.put("sampleCount", sampleCount);
+        table.put("sampleTimestamps", sampleTimestamps);
+        table.put("samplePositions", samplePositions);
+        table.put("sampleVelocities", sampleVelocities);
+        table.put("sampleCurrents", sampleCurrents);
     }
 
     public void fromLog(LogTable table) {
@@ -29,9 +50,16 @@ public class MotorInputs extends inputBase implements inputsIO, LoggableInputs {
         position = table.get("position", position);
         velocity = table.get("velocity", velocity);
         current = table.get("current", current);
+        torqueCurrent = table.get("torqueCurrent", torqueCurrent);
         acceleration = table.get("acceleration", acceleration);
         latency = table.get("latency", latency);
         temperature = table.get("temperature", temperature);
-
+        compensatedPosition = table.get("compensatedPosition", compensatedPosition);
+        compensatedVelocity = table.get("compensatedVelocity", compensatedVelocity);
+        sampleCount = table.get("sampleCount", sampleCount);
+        sampleTimestamps = table.get("sampleTimestamps", sampleTimestamps);
+        samplePositions = table.get("samplePositions", samplePositions);
+        sampleVelocities = table.get("sampleVelocities", sampleVelocities);
+        sampleCurrents = table.get("sampleCurrents", sampleCurrents);
     }
 }
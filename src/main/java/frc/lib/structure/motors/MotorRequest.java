@@ -3,12 +3,40 @@ package frc.lib.structure.motors;
 import frc.lib.structure.requestBase;
 
 public class MotorRequest extends requestBase{
+
+    /**
+     * How the motor controller follows the request
+     */
+    public enum ControlMode {
+        /** Position + velocity if position is set, otherwise velocity + acceleration */
+        DEFAULT,
+        /** Motion Magic to position, using the configured cruise velocity and acceleration */
+        MOTION_MAGIC,
+        /** Exponential Motion Magic to position, using the configured expo kV and kA */
+        MOTION_MAGIC_EXPO,
+        /** Motion Magic to position, using the constraints of the request */
+        DYNAMIC_MOTION_MAGIC,
+        /** Open loop, output is a voltage (e.g. characterization) */
+        VOLTAGE,
+        /** Open loop, output is a torque current in amps (e.g. characterization) */
+        TORQUE_CURRENT
+    }
     
     public double position;
     public double velocity;
     public double acceleration;
     public double feedforward;
 
+    public ControlMode controlMode = ControlMode.DEFAULT;
+
+    // profile constraints for DYNAMIC_MOTION_MAGIC
+    public double maxVelocity;
+    public double maxAcceleration;
+    public double maxJerk;
+
+    // open-loop output for VOLTAGE (volts) and TORQUE_CURRENT (amps)
+    public double output;
+
     public MotorRequest(){}
     
     public MotorRequest withPosition(double position){
@@ -30,4 +58,28 @@ public class MotorRequest extends requestBase{
         this.feedforward = feedforward;
         return this;
     }
+
+    public MotorRequest withControlMode(ControlMode controlMode){
+        this.controlMode = controlMode;
+        return this;
+    }
+
+    public MotorRequest withVoltage(double volts){
+        this.controlMode = ControlMode.VOLTAGE;
+        this.output = volts;
+        return this;
+    }
+
+    public MotorRequest withTorqueCurrent(double amps){
+        this.controlMode = ControlMode.TORQUE_CURRENT;
+        this.output = amps;
+        return this;
+    }
+
+    public MotorRequest withMotionConstraints(double maxVelocity, double maxAcceleration, double maxJerk){
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.maxJerk = maxJerk;
+        return this;
+    }
 }
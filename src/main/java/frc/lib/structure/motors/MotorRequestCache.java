@@ -0,0 +1,120 @@
+package frc.lib.structure.motors;
+
+/**
+ * Per-motor cache of the last control request sent to the device.
+ * A new request is skipped when it matches the last sent one within the configured epsilons, but
+ * it is always resent once the keep-alive period has elapsed so the device never times out.
+ * Sent and skipped frames are counted to measure the saved CAN bandwidth.
+ */
+public class MotorRequestCache {
+
+    private double positionEpsilon;
+    private double velocityEpsilon;
+    private double accelerationEpsilon;
+    private double feedforwardEpsilon;
+    private double keepAlivePeriod;
+    private boolean enabled;
+
+    private boolean hasSent = false;
+    private double lastPosition;
+    private double lastVelocity;
+    private double lastAcceleration;
+    private double lastFeedforward;
+    private double lastOutput;
+    private MotorRequest.ControlMode lastControlMode;
+    private double lastMaxVelocity;
+    private double lastMaxAcceleration;
+    private double lastMaxJerk;
+    private double lastSendTime;
+
+    private long framesSent = 0;
+    private long framesSkipped = 0;
+
+    public MotorRequestCache(MotorConfig config) {
+        configure(config);
+    }
+
+    /**
+     * Read epsilons and keep-alive period from a motor configuration. The next request is always
+     * sent afterwards
+     */
+    public void configure(MotorConfig config) {
+        this.enabled = config.requestDeduplication;
+        this.positionEpsilon = config.requestPositionEpsilon;
+        this.velocityEpsilon = config.requestVelocityEpsilon;
+        this.accelerationEpsilon = config.requestAccelerationEpsilon;
+        this.feedforwardEpsilon = config.requestFeedforwardEpsilon;
+        this.keepAlivePeriod = config.requestKeepAlivePeriod;
+        invalidate();
+    }
+
+    /**
+     * Decide whether a request has to be sent, and remember it if so
+     *
+     * @param request Request about to be sent
+     * @param timestamp Current time (seconds)
+     * @return true if the control frame should be sent
+     */
+    public boolean shouldSend(MotorRequest request, double timestamp) {
+        if (enabled && hasSent && timestamp - lastSendTime < keepAlivePeriod && matches(request)) {
+            framesSkipped++;
+            return false;
+        }
+        hasSent = true;
+        lastPosition = request.position;
+        lastVelocity = request.velocity;
+        lastAcceleration = request.acceleration;
+        lastFeedforward = request.feedforward;
+        lastOutput = request.output;
+        lastControlMode = request.controlMode;
+        lastMaxVelocity = request.maxVelocity;
+        lastMaxAcceleration = request.maxAcceleration;
+        lastMaxJerk = request.maxJerk;
+        lastSendTime = timestamp;
+        framesSent++;
+        return true;
+    }
+
+    /**
+     * Force the next request to be sent
+     */
+    public void invalidate() {
+        hasSent = false;
+    }
+
+    private boolean matches(MotorRequest request) {
+        return request.controlMode == lastControlMode
+                && request.maxVelocity == lastMaxVelocity
+                && request.maxAcceleration == lastMaxAcceleration
+                && request.maxJerk == lastMaxJerk
+                && isClose(request.position, lastPosition, positionEpsilon)
+                && isClose(request.velocity, lastVelocity, velocityEpsilon)
+                && isClose(request.acceleration, lastAcceleration, accelerationEpsilon)
+                && isClose(request.feedforward, lastFeedforward, feedforwardEpsilon)
+                && isClose(request.output, lastOutput, feedforwardEpsilon);
+    }
+
+    private static boolean isClose(double a, double b, double epsilon) {
+        // NaN selects a different control mode, so it only matches another NaN
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            return Double.isNaN(a) && Double.isNaN(b);
+        }
+        return Math.abs(a - b) <= epsilon;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * Get fraction of requests that were skipped
+     */
+    public double getSkipRatio() {
+        long total = framesSent + framesSkipped;
+        return total == 0 ? 0.0 : (double) framesSkipped / total;
+    }
+}
@@ -0,0 +1,112 @@
+package frc.lib.structure.motors;
+
+/**
+ * Lock-free single-producer single-consumer ring buffer of timestamped motor samples.
+ * The sampling thread offers samples, the main loop drains them into {@link MotorInputs}.
+ * When the buffer is full, new samples are dropped and counted instead of blocking the producer.
+ * Reads that failed on the bus are never queued, only counted.
+ */
+public class MotorSampleQueue {
+
+    private final int capacity;
+    private final int mask;
+
+    private final double[] timestamps;
+    private final double[] positions;
+    private final double[] velocities;
+    private final double[] currents;
+
+    // head is only written by the producer, tail only by the consumer
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile long droppedCount = 0;
+    private volatile long failedCount = 0;
+
+    /**
+     * @param minCapacity Minimum number of samples held, rounded up to a power of two
+     */
+    public MotorSampleQueue(int minCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.timestamps = new double[size];
+        this.positions = new double[size];
+        this.velocities = new double[size];
+        this.currents = new double[size];
+    }
+
+    /**
+     * Add a sample (producer side)
+     *
+     * @return false if the queue was full and the sample was dropped
+     */
+    public boolean offer(double timestamp, double position, double velocity, double current) {
+        long h = head;
+        if (h - tail >= capacity) {
+            droppedCount = droppedCount + 1;
+            return false;
+        }
+        int index = (int) (h & mask);
+        timestamps[index] = timestamp;
+        positions[index] = position;
+        velocities[index] = velocity;
+        currents[index] = current;
+        // Volatile write publishes the sample to the consumer
+        head = h + 1;
+        return true;
+    }
+
+    /**
+     * Count a sample that was not offered because reading the signals failed (producer side)
+     */
+    public void countFailed() {
+        failedCount = failedCount + 1;
+    }
+
+    /**
+     * Move every pending sample into the sample arrays of the inputs (consumer side)
+     *
+     * @param inputs Inputs to fill, the arrays are allocated once at the queue capacity and only
+     *     the first {@code inputs.sampleCount} entries are valid
+     * @return Number of drained samples
+     */
+    public int drainTo(MotorInputs inputs) {
+        long t = tail;
+        int count = (int) (head - t);
+        if (inputs.sampleTimestamps.length < capacity) {
+            inputs.sampleTimestamps = new double[capacity];
+            inputs.samplePositions = new double[capacity];
+            inputs.sampleVelocities = new double[capacity];
+            inputs.sampleCurrents = new double[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            int index = (int) ((t + i) & mask);
+            inputs.sampleTimestamps[i] = timestamps[index];
+            inputs.samplePositions[i] = positions[index];
+            inputs.sampleVelocities[i] = velocities[index];
+            inputs.sampleCurrents[i] = currents[index];
+        }
+        // Volatile write releases the slots back to the producer
+        tail = t + count;
+        inputs.sampleCount = count;
+        return count;
+    }
+
+    /**
+     * Get number of samples dropped because the consumer fell behind
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Get number of samples skipped because reading the signals failed
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,166 @@
+package frc.lib.structure.motors;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.StatusSignal;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Background thread that samples motor signals at the device update rate (one thread per CAN bus).
+ * Each registered motor gets a {@link MotorSampleQueue} of timestamped position, velocity and
+ * current samples, which is drained by the motor's updateInputs. On a CAN FD bus the thread waits
+ * on the signals themselves, otherwise it sleeps for one period and refreshes them. When the read
+ * fails (timeout, disconnected device) no sample is queued, the queues count the failure instead.
+ */
+public class MotorSamplingThread extends Thread {
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final double DEFAULT_FREQUENCY = 250.0; // Hz
+
+    private static final Map<String, MotorSamplingThread> threads = new HashMap<>();
+
+    private final boolean isCANFD;
+    private final Map<MotorIO, Entry> entries = new LinkedHashMap<>();
+
+    // Snapshots read by the sampling loop, rebuilt on registration
+    private volatile Entry[] entrySnapshot = new Entry[0];
+    private volatile BaseStatusSignal[] signalSnapshot = new BaseStatusSignal[0];
+    private volatile double frequency = DEFAULT_FREQUENCY;
+
+    /**
+     * Get (and start if needed) the sampling thread of a bus
+     *
+     * @param canbus Bus name
+     * @return Sampling thread of the bus
+     */
+    public static synchronized MotorSamplingThread forBus(String canbus) {
+        return threads.computeIfAbsent(canbus, name -> {
+            MotorSamplingThread thread = new MotorSamplingThread(name);
+            thread.start();
+            return thread;
+        });
+    }
+
+    private MotorSamplingThread(String canbus) {
+        super("MotorSampler-" + canbus);
+        setDaemon(true);
+        this.isCANFD = new CANBus(canbus).isNetworkFD();
+    }
+
+    /**
+     * Register (or re-register) the sampled signals of a motor. The signals are owned by this
+     * thread afterwards and must not be refreshed anywhere else
+     *
+     * @param motorIO Motor that owns the signals
+     * @param frequency Update frequency of the position signal (Hz), 0 for the default
+     * @return Queue receiving the samples of this motor
+     */
+    public synchronized MotorSampleQueue register(MotorIO motorIO, double frequency,
+            StatusSignal<?> position, StatusSignal<?> velocity, StatusSignal<?> current) {
+        Entry entry = new Entry(position, velocity, current, new MotorSampleQueue(QUEUE_CAPACITY),
+                frequency > 0 ? frequency : DEFAULT_FREQUENCY);
+        entries.put(motorIO, entry);
+        rebuildSnapshots();
+        return entry.queue;
+    }
+
+    /**
+     * Change the sampling rate of a motor, e.g. after its signal rates were downgraded
+     *
+     * @param motorIO Registered motor
+     * @param frequency Update frequency of the position signal (Hz), 0 for the default
+     */
+    public synchronized void setFrequency(MotorIO motorIO, double frequency) {
+        Entry entry = entries.get(motorIO);
+        if (entry != null) {
+            entry.frequency = frequency > 0 ? frequency : DEFAULT_FREQUENCY;
+            rebuildSnapshots();
+        }
+    }
+
+    /**
+     * Stop sampling the signals of a motor
+     */
+    public synchronized void unregister(MotorIO motorIO) {
+        if (entries.remove(motorIO) != null) {
+            rebuildSnapshots();
+        }
+    }
+
+    private void rebuildSnapshots() {
+        Entry[] newEntries = entries.values().toArray(new Entry[0]);
+        BaseStatusSignal[] newSignals = new BaseStatusSignal[newEntries.length * 3];
+        double maxFrequency = newEntries.length > 0 ? 0.0 : DEFAULT_FREQUENCY;
+        for (int i = 0; i < newEntries.length; i++) {
+            newSignals[i * 3] = newEntries[i].position;
+            newSignals[i * 3 + 1] = newEntries[i].velocity;
+            newSignals[i * 3 + 2] = newEntries[i].current;
+            maxFrequency = Math.max(maxFrequency, newEntries[i].frequency);
+        }
+        frequency = maxFrequency;
+        signalSnapshot = newSignals;
+        entrySnapshot = newEntries;
+    }
+
+    @Override
+    public void run() {
+        while (!isInterrupted()) {
+            BaseStatusSignal[] signals = signalSnapshot;
+            Entry[] currentEntries = entrySnapshot;
+            double period = 1.0 / frequency;
+
+            StatusCode status = StatusCode.OK;
+            try {
+                if (isCANFD && signals.length > 0) {
+                    status = BaseStatusSignal.waitForAll(2.0 * period, signals);
+                } else {
+                    Thread.sleep((long) Math.max(1.0, period * 1000.0));
+                    if (signals.length > 0) {
+                        status = BaseStatusSignal.refreshAll(signals);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (!status.isOK()) {
+                for (Entry entry : currentEntries) {
+                    entry.queue.countFailed();
+                }
+                continue;
+            }
+            double now = RobotController.getFPGATime() / 1e6;
+            for (Entry entry : currentEntries) {
+                double latency = entry.position.getAllTimestamps().getBestTimestamp().getLatency();
+                entry.queue.offer(now - latency, entry.position.getValueAsDouble(),
+                        entry.velocity.getValueAsDouble(), entry.current.getValueAsDouble());
+            }
+        }
+    }
+
+    /**
+     * Sampled signals of one motor
+     */
+    private static class Entry {
+        final StatusSignal<?> position;
+        final StatusSignal<?> velocity;
+        final StatusSignal<?> current;
+        final MotorSampleQueue queue;
+        double frequency;
+
+        Entry(StatusSignal<?> position, StatusSignal<?> velocity, StatusSignal<?> current,
+                MotorSampleQueue queue, double frequency) {
+            this.position = position;
+            this.velocity = velocity;
+            this.current = current;
+            this.queue = queue;
+            this.frequency = frequency;
+        }
+    }
+}
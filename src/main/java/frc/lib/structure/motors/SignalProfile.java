@@ -0,0 +1,120 @@
+package frc.lib.structure.motors;
+
+/**
+ * Update frequencies (Hz) of each motor status signal. A frequency of 0 disables the signal.
+ * Position, velocity and torque current are feedback signals (torque current is also what the
+ * online feedforward estimator fits to), the others are diagnostics, which {@link CanBusBudgeter}
+ * downgrades first when a bus is over budget.
+ */
+public class SignalProfile {
+    // Phoenix does not accept non-zero frequencies below this
+    public static final double MIN_FREQUENCY = 4.0;
+
+    public double position;
+    public double velocity;
+    public double acceleration;
+    public double torqueCurrent;
+    public double supplyCurrent;
+    public double appliedVolts;
+    public double temperature;
+
+    public SignalProfile(double position, double velocity, double acceleration, double torqueCurrent,
+            double supplyCurrent, double appliedVolts, double temperature) {
+        this.position = position;
+        this.velocity = velocity;
+        this.acceleration = acceleration;
+        this.torqueCurrent = torqueCurrent;
+        this.supplyCurrent = supplyCurrent;
+        this.appliedVolts = appliedVolts;
+        this.temperature = temperature;
+    }
+
+    /**
+     * Same frequency for every signal (the behavior before profiles existed)
+     */
+    public static SignalProfile uniform(double frequency) {
+        return new SignalProfile(frequency, frequency, frequency, frequency, frequency, frequency,
+                frequency);
+    }
+
+    /**
+     * Profile for fast closed-loop mechanisms: fast feedback, slow diagnostics
+     */
+    public static SignalProfile highRate() {
+        return new SignalProfile(250, 250, 100, 50, 50, 50, 4);
+    }
+
+    /**
+     * Profile for ordinary mechanisms
+     */
+    public static SignalProfile standard() {
+        return new SignalProfile(100, 100, 50, 50, 50, 20, 4);
+    }
+
+    /**
+     * Profile for motors that are only monitored
+     */
+    public static SignalProfile diagnostics() {
+        return new SignalProfile(50, 50, 10, 10, 10, 10, 4);
+    }
+
+    public SignalProfile copy() {
+        return new SignalProfile(position, velocity, acceleration, torqueCurrent, supplyCurrent,
+                appliedVolts, temperature);
+    }
+
+    /**
+     * Get expected status frames per second, counting every signal as its own frame (upper bound)
+     */
+    public double getFramesPerSecond() {
+        return getFeedbackFramesPerSecond() + getDiagnosticFramesPerSecond();
+    }
+
+    /**
+     * Get frames per second of the feedback signals (position, velocity and torque current)
+     */
+    public double getFeedbackFramesPerSecond() {
+        return position + velocity + torqueCurrent;
+    }
+
+    /**
+     * Get frames per second of the signals that can be downgraded first
+     */
+    public double getDiagnosticFramesPerSecond() {
+        return acceleration + supplyCurrent + appliedVolts + temperature;
+    }
+
+    /**
+     * Scale the diagnostic signals, never going below {@link #MIN_FREQUENCY} for enabled signals
+     */
+    public void scaleDiagnostics(double factor) {
+        acceleration = scale(acceleration, factor);
+        supplyCurrent = scale(supplyCurrent, factor);
+        appliedVolts = scale(appliedVolts, factor);
+        temperature = scale(temperature, factor);
+    }
+
+    /**
+     * Scale the feedback signals, never going below {@link #MIN_FREQUENCY} for enabled signals
+     */
+    public void scaleFeedback(double factor) {
+        position = scale(position, factor);
+        velocity = scale(velocity, factor);
+        torqueCurrent = scale(torqueCurrent, factor);
+    }
+
+    private static double scale(double frequency, double factor) {
+        if (frequency <= 0) {
+            return 0;
+        }
+        return Math.max(MIN_FREQUENCY, frequency * factor);
+    }
+
+    @Override
+    public String toString() {
+        return "SignalProfile(position=" + position + ", velocity=" + velocity + ", acceleration="
+                + acceleration + ", torqueCurrent=" + torqueCurrent + ", supplyCurrent="
+                + supplyCurrent + ", appliedVolts=" + appliedVolts + ", temperature=" + temperature
+                + ")";
+    }
+}
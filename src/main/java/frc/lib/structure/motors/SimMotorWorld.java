@@ -0,0 +1,528 @@
+package frc.lib.structure.motors;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Batched simulation of every simulated motor. The state of all motors is stored in primitive
+ * columns (one array per quantity, one index per motor) and stepped in one loop per substep, while
+ * each {@link KrakenSimIO} is a thin view over one index.
+ *
+ * The world is advanced to its clock in fixed substeps; the remainder shorter than one substep is
+ * carried over. The default world follows the (simulated) FPGA timestamp, a manual world only moves
+ * when {@link #advanceBy(double)} is called and shares no state with any other world.
+ */
+public class SimMotorWorld {
+
+    public static final double DEFAULT_SUBSTEP = 0.001; // seconds
+
+    static final DCMotor MOTOR = DCMotor.getKrakenX60Foc(1);
+    static final double ROTOR_INERTIA = 5.0e-5; // kg⋅m², approximate Kraken X60 rotor
+    static final double DEFAULT_LOAD_INERTIA = 0.1; // kg⋅m², until the mechanism sets it
+    static final double MAX_VOLTAGE = 12.0; // nominal voltage of the expo profile gains
+    // First-order winding thermal model (approximate values for a Kraken X60)
+    static final double AMBIENT_TEMPERATURE = 25.0; // °C
+    static final double THERMAL_RESISTANCE = 1.0; // °C/W, winding to ambient
+    static final double THERMAL_TIME_CONSTANT = 120.0; // seconds
+    // Velocity below which Coulomb friction is scaled down, avoids chatter around standstill
+    static final double FRICTION_VELOCITY_BAND = 0.01; // output units per second
+
+    // Control modes as stored in the mode column
+    static final int MODE_DEFAULT = 0;
+    static final int MODE_MOTION_MAGIC = 1;
+    static final int MODE_MOTION_MAGIC_EXPO = 2;
+    static final int MODE_VOLTAGE = 3;
+    static final int MODE_TORQUE_CURRENT = 4;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static SimMotorWorld defaultWorld = null;
+
+    private final double substep;
+    private final DoubleSupplier clock;
+    private final boolean readBatteryVoltage;
+    private double time;
+    private double accumulatedTime = 0.0;
+    private double batteryVoltage = 12.0;
+    private int size = 0;
+
+    // State
+    double[] position;
+    double[] velocity;
+    double[] acceleration;
+    double[] current;
+    double[] supplyCurrent;
+    double[] appliedVoltage;
+    double[] temperature;
+
+    // Targets
+    double[] targetPosition;
+    double[] targetVelocity;
+    double[] targetAcceleration;
+    double[] feedforward;
+    double[] openLoopOutput;
+
+    // Device PID
+    double[] kP;
+    double[] kI;
+    double[] kD;
+    double[] kT;
+    double[] positionError;
+    double[] velocityError;
+    double[] integralError;
+    double[] desiredCurrent;
+
+    // Plant, at the output shaft (kg⋅m², a linear mechanism reflects its mass as m⋅r²)
+    double[] gearRatio;
+    double[] loadInertia;
+    double[] statorLimit;
+    double[] supplyLimit;
+
+    // External torque at the output: constant (e.g. elevator gravity), cosine of the position
+    // (e.g. arm gravity with 0 = horizontal) and Coulomb friction
+    double[] constantLoad;
+    double[] cosineLoad;
+    double[] coulombFriction;
+
+    // On-device motion profile emulation (Motion Magic modes)
+    int[] mode;
+    boolean[] profileActive;
+    double[] goalPosition;
+    double[] profilePosition;
+    double[] profileVelocity;
+    double[] profileMaxVelocity;
+    double[] profileMaxAcceleration;
+    double[] expoKV;
+    double[] expoKA;
+
+    // Followers mirror their leader, the leader drives the load with the torque of all of them
+    int[] leader;
+    double[] leaderDirection;
+    int[] followerCount;
+
+    /**
+     * Create a world that follows a clock
+     *
+     * @param substep Integration step in seconds
+     * @param clock Time source in seconds
+     */
+    public SimMotorWorld(double substep, DoubleSupplier clock) {
+        this(substep, clock, false);
+    }
+
+    private SimMotorWorld(double substep, DoubleSupplier clock, boolean readBatteryVoltage) {
+        this.substep = substep;
+        this.clock = clock;
+        this.readBatteryVoltage = readBatteryVoltage;
+        this.time = clock == null ? 0.0 : clock.getAsDouble();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Create a world that only advances through {@link #advanceBy(double)}, e.g. for headless runs
+     * on worker threads. It does not touch the HAL
+     *
+     * @param substep Integration step in seconds
+     * @return New manual world starting at time 0
+     */
+    public static SimMotorWorld manual(double substep) {
+        return new SimMotorWorld(substep, null, false);
+    }
+
+    /**
+     * Get the world used by simulated motors created without an explicit world. It follows the
+     * FPGA timestamp and the simulated battery voltage
+     *
+     * @return Default world
+     */
+    public static synchronized SimMotorWorld getDefault() {
+        if (defaultWorld == null) {
+            defaultWorld = new SimMotorWorld(DEFAULT_SUBSTEP, Timer::getFPGATimestamp, true);
+        }
+        return defaultWorld;
+    }
+
+    /**
+     * Add a motor to the world
+     *
+     * @return Index of the new motor
+     */
+    synchronized int add() {
+        if (size == position.length) {
+            grow(size * 2);
+        }
+        int index = size++;
+        temperature[index] = AMBIENT_TEMPERATURE;
+        loadInertia[index] = DEFAULT_LOAD_INERTIA;
+        gearRatio[index] = 1.0;
+        statorLimit[index] = MOTOR.stallCurrentAmps;
+        supplyLimit[index] = Double.POSITIVE_INFINITY;
+        leader[index] = -1;
+        leaderDirection[index] = 1.0;
+        return index;
+    }
+
+    /**
+     * Copy the gains and limits of a configuration into the columns of a motor
+     */
+    void configure(int index, MotorConfig config) {
+        kP[index] = config.kP;
+        kI[index] = config.kI;
+        kD[index] = config.kD;
+        kT[index] = config.kT;
+        gearRatio[index] = config.gearRatio;
+        statorLimit[index] = config.statorCurrentLimitEnabled
+                ? Math.min(config.statorCurrentLimit, MOTOR.stallCurrentAmps)
+                : MOTOR.stallCurrentAmps;
+        supplyLimit[index] = config.supplyCurrentLimitEnabled
+                ? config.supplyCurrentLimit
+                : Double.POSITIVE_INFINITY;
+        // Expo constraints are voltage based (volts per rotation/s and per rotation/s²)
+        expoKV[index] = config.motionMagicExpoKV / (2.0 * Math.PI);
+        expoKA[index] = config.motionMagicExpoKA / (2.0 * Math.PI);
+    }
+
+    /**
+     * Clear the state, targets and profile of a motor
+     */
+    void resetState(int index) {
+        position[index] = 0.0;
+        velocity[index] = 0.0;
+        acceleration[index] = 0.0;
+        current[index] = 0.0;
+        supplyCurrent[index] = 0.0;
+        appliedVoltage[index] = 0.0;
+        temperature[index] = AMBIENT_TEMPERATURE;
+        targetPosition[index] = 0.0;
+        targetVelocity[index] = 0.0;
+        targetAcceleration[index] = 0.0;
+        feedforward[index] = 0.0;
+        openLoopOutput[index] = 0.0;
+        positionError[index] = 0.0;
+        velocityError[index] = 0.0;
+        integralError[index] = 0.0;
+        desiredCurrent[index] = 0.0;
+        mode[index] = MODE_DEFAULT;
+        profileActive[index] = false;
+    }
+
+    /**
+     * Make a motor follow another one, or stop following with a negative leader
+     */
+    void setLeader(int index, int leaderIndex, boolean opposeLeader) {
+        if (leader[index] >= 0) {
+            followerCount[leader[index]]--;
+        }
+        leader[index] = leaderIndex;
+        leaderDirection[index] = opposeLeader ? -1.0 : 1.0;
+        if (leaderIndex >= 0) {
+            followerCount[leaderIndex]++;
+        }
+    }
+
+    /**
+     * Advance the world to its clock. Does nothing for a manual world
+     */
+    public void update() {
+        if (clock != null) {
+            advanceTo(clock.getAsDouble());
+        }
+    }
+
+    /**
+     * Advance the world to a timestamp in fixed substeps. Advancing to an earlier or the same
+     * timestamp does nothing, so this can be called from several places in one loop
+     *
+     * @param timestamp Time in seconds
+     */
+    public synchronized void advanceTo(double timestamp) {
+        if (timestamp <= time) {
+            return;
+        }
+        accumulatedTime += timestamp - time;
+        time = timestamp;
+        if (readBatteryVoltage) {
+            batteryVoltage = RobotController.getBatteryVoltage();
+        }
+        while (accumulatedTime >= substep) {
+            step(substep);
+            accumulatedTime -= substep;
+        }
+    }
+
+    /**
+     * Advance the world by a duration
+     *
+     * @param duration Duration in seconds
+     */
+    public void advanceBy(double duration) {
+        advanceTo(time + duration);
+    }
+
+    /**
+     * Step every motor by exactly one step
+     *
+     * @param dt Step in seconds
+     */
+    public synchronized void step(double dt) {
+        for (int i = 0; i < size; i++) {
+            if (leader[i] >= 0) {
+                continue;
+            }
+            if (profileActive[i]) {
+                stepProfile(i, dt);
+            }
+            if (mode[i] == MODE_VOLTAGE) {
+                // The current a voltage drives against the back-EMF
+                double voltage = MathUtil.clamp(openLoopOutput[i], -batteryVoltage, batteryVoltage);
+                double backEmf = velocity[i] * gearRatio[i] / MOTOR.KvRadPerSecPerVolt;
+                desiredCurrent[i] = (voltage - backEmf) / MOTOR.rOhms;
+            } else if (mode[i] == MODE_TORQUE_CURRENT) {
+                desiredCurrent[i] = openLoopOutput[i];
+            } else {
+                desiredCurrent[i] = calculateControlOutput(i, dt);
+            }
+            simulateMotor(i, desiredCurrent[i], dt);
+        }
+    }
+
+    private double calculateControlOutput(int i, double dt) {
+        positionError[i] = targetPosition[i] - position[i];
+        velocityError[i] = targetVelocity[i] - velocity[i];
+
+        // Anti-windup for integral term
+        if (Math.abs(positionError[i]) < 0.1) {
+            integralError[i] = MathUtil.clamp(integralError[i] + positionError[i] * dt, -1.0, 1.0);
+        } else {
+            integralError[i] = 0.0;
+        }
+
+        // Output is the desired torque current (FOC)
+        return kP[i] * positionError[i] + kI[i] * integralError[i] + kD[i] * velocityError[i]
+                + feedforward[i] * kT[i];
+    }
+
+    private void simulateMotor(int i, double desired, double dt) {
+        int motorCount = 1 + followerCount[i];
+        double motorVelocity = velocity[i] * gearRatio[i]; // rad/s at the rotor
+        double backEmf = motorVelocity / MOTOR.KvRadPerSecPerVolt;
+
+        // Stator current limit
+        double torqueCurrent = MathUtil.clamp(desired, -statorLimit[i], statorLimit[i]);
+
+        // Voltage saturation: V = I * R + back-EMF must stay within the battery voltage
+        double voltage = torqueCurrent * MOTOR.rOhms + backEmf;
+        if (Math.abs(voltage) > batteryVoltage) {
+            voltage = Math.copySign(batteryVoltage, voltage);
+            torqueCurrent = (voltage - backEmf) / MOTOR.rOhms;
+        }
+
+        // Supply current limit: supply power V * I must stay within limit * battery voltage.
+        // Solve R * I² + e * I = P along the direction of the current
+        double supply = voltage * torqueCurrent / batteryVoltage;
+        if (supply > supplyLimit[i]) {
+            double direction = Math.signum(torqueCurrent);
+            double maxPower = supplyLimit[i] * batteryVoltage;
+            double magnitude = (-direction * backEmf
+                    + Math.sqrt(backEmf * backEmf + 4.0 * MOTOR.rOhms * maxPower)) / (2.0 * MOTOR.rOhms);
+            torqueCurrent = direction * magnitude;
+            voltage = torqueCurrent * MOTOR.rOhms + backEmf;
+            supply = voltage * torqueCurrent / batteryVoltage;
+        }
+        current[i] = torqueCurrent;
+        appliedVoltage[i] = voltage;
+        supplyCurrent[i] = supply;
+
+        // Torque at the output, followers add the same torque. Friction is modeled so that the
+        // free current is drawn at free speed
+        double motorTorque = MOTOR.KtNMPerAmp * torqueCurrent;
+        double frictionTorque = -MOTOR.KtNMPerAmp * MOTOR.freeCurrentAmps
+                * motorVelocity / MOTOR.freeSpeedRadPerSec;
+        double outputTorque = (motorTorque + frictionTorque) * gearRatio[i] * motorCount
+                + constantLoad[i] - cosineLoad[i] * Math.cos(position[i])
+                - coulombFriction[i] * MathUtil.clamp(velocity[i] / FRICTION_VELOCITY_BAND, -1.0, 1.0);
+
+        // Load inertia plus the rotor inertia reflected through the gearbox
+        double totalInertia = loadInertia[i]
+                + ROTOR_INERTIA * gearRatio[i] * gearRatio[i] * motorCount;
+
+        acceleration[i] = outputTorque / totalInertia;
+
+        // Semi-implicit Euler: update velocity first, then position with the new velocity
+        velocity[i] += acceleration[i] * dt;
+        position[i] += velocity[i] * dt;
+
+        // First-order thermal model driven by the copper losses
+        double powerLoss = torqueCurrent * torqueCurrent * MOTOR.rOhms;
+        double steadyTemperature = AMBIENT_TEMPERATURE + powerLoss * THERMAL_RESISTANCE;
+        temperature[i] += (steadyTemperature - temperature[i]) * dt / THERMAL_TIME_CONSTANT;
+    }
+
+    /**
+     * Advance the emulated Motion Magic profile by one step and use it as the PID target. The
+     * profile is generated online: accelerate towards the velocity that can still stop at the goal
+     */
+    private void stepProfile(int i, double dt) {
+        double maxVelocity = profileMaxVelocity[i];
+        double maxAcceleration = profileMaxAcceleration[i];
+        if (mode[i] == MODE_MOTION_MAGIC_EXPO) {
+            maxVelocity = MAX_VOLTAGE / expoKV[i];
+            maxAcceleration = Math.max(0.0,
+                    (MAX_VOLTAGE - expoKV[i] * Math.abs(profileVelocity[i])) / expoKA[i]);
+        }
+
+        double error = goalPosition[i] - profilePosition[i];
+        if (Math.abs(error) <= Math.abs(profileVelocity[i]) * dt
+                && Math.abs(profileVelocity[i]) <= maxAcceleration * dt) {
+            // Close enough to stop within one step
+            profilePosition[i] = goalPosition[i];
+            profileVelocity[i] = 0.0;
+        } else {
+            double stoppingVelocity = Math.copySign(Math.sqrt(2.0 * maxAcceleration * Math.abs(error)), error);
+            double desiredVelocity = MathUtil.clamp(stoppingVelocity, -maxVelocity, maxVelocity);
+            double maxDeltaVelocity = maxAcceleration * dt;
+            double deltaVelocity = MathUtil.clamp(desiredVelocity - profileVelocity[i], -maxDeltaVelocity,
+                    maxDeltaVelocity);
+            profileVelocity[i] += deltaVelocity;
+            profilePosition[i] += profileVelocity[i] * dt;
+            targetAcceleration[i] = deltaVelocity / dt;
+        }
+
+        targetPosition[i] = profilePosition[i];
+        targetVelocity[i] = profileVelocity[i];
+    }
+
+    /**
+     * Get time of the world
+     *
+     * @return Time in seconds up to which the world has been advanced
+     */
+    public synchronized double getTime() {
+        return time;
+    }
+
+    /**
+     * Get age of the state, the part of the elapsed time not yet integrated
+     *
+     * @return Age in seconds, less than one substep
+     */
+    public synchronized double getStateAge() {
+        return accumulatedTime;
+    }
+
+    /**
+     * Get integration step
+     *
+     * @return Substep in seconds
+     */
+    public double getSubstep() {
+        return substep;
+    }
+
+    /**
+     * Set the battery voltage used by a world that does not read the simulated battery
+     *
+     * @param voltage Battery voltage in volts
+     */
+    public synchronized void setBatteryVoltage(double voltage) {
+        batteryVoltage = voltage;
+    }
+
+    /**
+     * Get number of motors in the world
+     *
+     * @return Number of motors
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        position = new double[capacity];
+        velocity = new double[capacity];
+        acceleration = new double[capacity];
+        current = new double[capacity];
+        supplyCurrent = new double[capacity];
+        appliedVoltage = new double[capacity];
+        temperature = new double[capacity];
+        targetPosition = new double[capacity];
+        targetVelocity = new double[capacity];
+        targetAcceleration = new double[capacity];
+        feedforward = new double[capacity];
+        openLoopOutput = new double[capacity];
+        kP = new double[capacity];
+        kI = new double[capacity];
+        kD = new double[capacity];
+        kT = new double[capacity];
+        positionError = new double[capacity];
+        velocityError = new double[capacity];
+        integralError = new double[capacity];
+        desiredCurrent = new double[capacity];
+        gearRatio = new double[capacity];
+        loadInertia = new double[capacity];
+        statorLimit = new double[capacity];
+        supplyLimit = new double[capacity];
+        constantLoad = new double[capacity];
+        cosineLoad = new double[capacity];
+        coulombFriction = new double[capacity];
+        mode = new int[capacity];
+        profileActive = new boolean[capacity];
+        goalPosition = new double[capacity];
+        profilePosition = new double[capacity];
+        profileVelocity = new double[capacity];
+        profileMaxVelocity = new double[capacity];
+        profileMaxAcceleration = new double[capacity];
+        expoKV = new double[capacity];
+        expoKA = new double[capacity];
+        leader = new int[capacity];
+        leaderDirection = new double[capacity];
+        followerCount = new int[capacity];
+    }
+
+    private void grow(int capacity) {
+        position = Arrays.copyOf(position, capacity);
+        velocity = Arrays.copyOf(velocity, capacity);
+        acceleration = Arrays.copyOf(acceleration, capacity);
+        current = Arrays.copyOf(current, capacity);
+        supplyCurrent = Arrays.copyOf(supplyCurrent, capacity);
+        appliedVoltage = Arrays.copyOf(appliedVoltage, capacity);
+        temperature = Arrays.copyOf(temperature, capacity);
+        targetPosition = Arrays.copyOf(targetPosition, capacity);
+        targetVelocity = Arrays.copyOf(targetVelocity, capacity);
+        targetAcceleration = Arrays.copyOf(targetAcceleration, capacity);
+        feedforward = Arrays.copyOf(feedforward, capacity);
+        openLoopOutput = Arrays.copyOf(openLoopOutput, capacity);
+        kP = Arrays.copyOf(kP, capacity);
+        kI = Arrays.copyOf(kI, capacity);
+        kD = Arrays.copyOf(kD, capacity);
+        kT = Arrays.copyOf(kT, capacity);
+        positionError = Arrays.copyOf(positionError, capacity);
+        velocityError = Arrays.copyOf(velocityError, capacity);
+        integralError = Arrays.copyOf(integralError, capacity);
+        desiredCurrent = Arrays.copyOf(desiredCurrent, capacity);
+        gearRatio = Arrays.copyOf(gearRatio, capacity);
+        loadInertia = Arrays.copyOf(loadInertia, capacity);
+        statorLimit = Arrays.copyOf(statorLimit, capacity);
+        supplyLimit = Arrays.copyOf(supplyLimit, capacity);
+        constantLoad = Arrays.copyOf(constantLoad, capacity);
+        cosineLoad = Arrays.copyOf(cosineLoad, capacity);
+        coulombFriction = Arrays.copyOf(coulombFriction, capacity);
+        mode = Arrays.copyOf(mode, capacity);
+        profileActive = Arrays.copyOf(profileActive, capacity);
+        goalPosition = Arrays.copyOf(goalPosition, capacity);
+        profilePosition = Arrays.copyOf(profilePosition, capacity);
+        profileVelocity = Arrays.copyOf(profileVelocity, capacity);
+        profileMaxVelocity = Arrays.copyOf(profileMaxVelocity, capacity);
+        profileMaxAcceleration = Arrays.copyOf(profileMaxAcceleration, capacity);
+        expoKV = Arrays.copyOf(expoKV, capacity);
+        expoKA = Arrays.copyOf(expoKA, capacity);
+        leader = Arrays.copyOf(leader, capacity);
+        leaderDirection = Arrays.copyOf(leaderDirection, capacity);
+        followerCount = Arrays.copyOf(followerCount, capacity);
+    }
+}
@@ -0,0 +1,128 @@
+package frc.lib.structure.physics;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Mutable 3x3 matrix (e.g. a moment of inertia) for the per-loop physics path. Like {@link Vec3},
+ * operations write into preallocated objects and do not allocate.
+ */
+public final class Mat3 {
+
+    public double m00, m01, m02;
+    public double m10, m11, m12;
+    public double m20, m21, m22;
+
+    public Mat3() {}
+
+    public Mat3 set(double m00, double m01, double m02, double m10, double m11, double m12,
+            double m20, double m21, double m22) {
+        this.m00 = m00;
+        this.m01 = m01;
+        this.m02 = m02;
+        this.m10 = m10;
+        this.m11 = m11;
+        this.m12 = m12;
+        this.m20 = m20;
+        this.m21 = m21;
+        this.m22 = m22;
+        return this;
+    }
+
+    public Mat3 set(Mat3 other) {
+        return set(other.m00, other.m01, other.m02, other.m10, other.m11, other.m12, other.m20,
+                other.m21, other.m22);
+    }
+
+    /**
+     * Copy a 3x3 matrix
+     */
+    public Mat3 set(SimpleMatrix matrix) {
+        return set(matrix.get(0, 0), matrix.get(0, 1), matrix.get(0, 2), matrix.get(1, 0),
+                matrix.get(1, 1), matrix.get(1, 2), matrix.get(2, 0), matrix.get(2, 1),
+                matrix.get(2, 2));
+    }
+
+    public Mat3 setIdentity() {
+        return set(1.0, 0.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 1.0);
+    }
+
+    public Mat3 setZero() {
+        return set(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+    }
+
+    /**
+     * Rotation by an angle about a unit axis (Rodrigues)
+     */
+    public Mat3 setRotation(Vec3 axis, double angle) {
+        double c = Math.cos(angle);
+        double s = Math.sin(angle);
+        double t = 1.0 - c;
+        double x = axis.x, y = axis.y, z = axis.z;
+        return set(c + x * x * t, x * y * t - z * s, x * z * t + y * s,
+                y * x * t + z * s, c + y * y * t, y * z * t - x * s,
+                z * x * t - y * s, z * y * t + x * s, c + z * z * t);
+    }
+
+    /**
+     * this = this + other
+     */
+    public Mat3 add(Mat3 other) {
+        return set(m00 + other.m00, m01 + other.m01, m02 + other.m02, m10 + other.m10,
+                m11 + other.m11, m12 + other.m12, m20 + other.m20, m21 + other.m21,
+                m22 + other.m22);
+    }
+
+    /**
+     * this = this + mass * (|r|² I - r rᵀ), the inertia of a point mass at r (parallel axis
+     * theorem)
+     */
+    public Mat3 addPointMass(double mass, Vec3 r) {
+        double r2 = r.dot(r);
+        return set(m00 + mass * (r2 - r.x * r.x), m01 - mass * r.x * r.y, m02 - mass * r.x * r.z,
+                m10 - mass * r.y * r.x, m11 + mass * (r2 - r.y * r.y), m12 - mass * r.y * r.z,
+                m20 - mass * r.z * r.x, m21 - mass * r.z * r.y, m22 + mass * (r2 - r.z * r.z));
+    }
+
+    /**
+     * this = a * b, a or b may be this
+     */
+    public Mat3 mul(Mat3 a, Mat3 b) {
+        return set(a.m00 * b.m00 + a.m01 * b.m10 + a.m02 * b.m20,
+                a.m00 * b.m01 + a.m01 * b.m11 + a.m02 * b.m21,
+                a.m00 * b.m02 + a.m01 * b.m12 + a.m02 * b.m22,
+                a.m10 * b.m00 + a.m11 * b.m10 + a.m12 * b.m20,
+                a.m10 * b.m01 + a.m11 * b.m11 + a.m12 * b.m21,
+                a.m10 * b.m02 + a.m11 * b.m12 + a.m12 * b.m22,
+                a.m20 * b.m00 + a.m21 * b.m10 + a.m22 * b.m20,
+                a.m20 * b.m01 + a.m21 * b.m11 + a.m22 * b.m21,
+                a.m20 * b.m02 + a.m21 * b.m12 + a.m22 * b.m22);
+    }
+
+    /**
+     * result = this * v, result may be v
+     *
+     * @return result
+     */
+    public Vec3 transform(Vec3 v, Vec3 result) {
+        return result.set(m00 * v.x + m01 * v.y + m02 * v.z, m10 * v.x + m11 * v.y + m12 * v.z,
+                m20 * v.x + m21 * v.y + m22 * v.z);
+    }
+
+    /**
+     * result = thisᵀ * v (the inverse rotation for a rotation matrix), result may be v
+     *
+     * @return result
+     */
+    public Vec3 transformTransposed(Vec3 v, Vec3 result) {
+        return result.set(m00 * v.x + m10 * v.y + m20 * v.z, m01 * v.x + m11 * v.y + m21 * v.z,
+                m02 * v.x + m12 * v.y + m22 * v.z);
+    }
+
+    /**
+     * v' * this * v (e.g. the inertia about axis v)
+     */
+    public double quadraticForm(Vec3 v) {
+        return v.x * (m00 * v.x + m01 * v.y + m02 * v.z) + v.y * (m10 * v.x + m11 * v.y + m12 * v.z)
+                + v.z * (m20 * v.x + m21 * v.y + m22 * v.z);
+    }
+}
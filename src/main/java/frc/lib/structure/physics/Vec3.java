@@ -0,0 +1,125 @@
+package frc.lib.structure.physics;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Mutable 3D vector for the per-loop physics path. Every operation writes into this vector and
+ * returns it, so preallocated vectors can be reused without allocating. Operations are safe when
+ * an argument is this vector.
+ */
+public final class Vec3 {
+
+    public double x;
+    public double y;
+    public double z;
+
+    public Vec3() {}
+
+    public Vec3(double x, double y, double z) {
+        set(x, y, z);
+    }
+
+    public Vec3 set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vec3 set(Vec3 other) {
+        return set(other.x, other.y, other.z);
+    }
+
+    /**
+     * Copy a 3x1 matrix
+     */
+    public Vec3 set(SimpleMatrix matrix) {
+        return set(matrix.get(0, 0), matrix.get(1, 0), matrix.get(2, 0));
+    }
+
+    public Vec3 setZero() {
+        return set(0.0, 0.0, 0.0);
+    }
+
+    /**
+     * this = a + b
+     */
+    public Vec3 add(Vec3 a, Vec3 b) {
+        return set(a.x + b.x, a.y + b.y, a.z + b.z);
+    }
+
+    /**
+     * this = this + other
+     */
+    public Vec3 add(Vec3 other) {
+        return add(this, other);
+    }
+
+    /**
+     * this = a - b
+     */
+    public Vec3 sub(Vec3 a, Vec3 b) {
+        return set(a.x - b.x, a.y - b.y, a.z - b.z);
+    }
+
+    /**
+     * this = v * scale
+     */
+    public Vec3 scale(Vec3 v, double scale) {
+        return set(v.x * scale, v.y * scale, v.z * scale);
+    }
+
+    /**
+     * this = this * scale
+     */
+    public Vec3 scale(double scale) {
+        return scale(this, scale);
+    }
+
+    /**
+     * this = this + v * scale
+     */
+    public Vec3 addScaled(Vec3 v, double scale) {
+        return set(x + v.x * scale, y + v.y * scale, z + v.z * scale);
+    }
+
+    /**
+     * this = a × b
+     */
+    public Vec3 cross(Vec3 a, Vec3 b) {
+        return set(a.y * b.z - a.z * b.y, a.z * b.x - a.x * b.z, a.x * b.y - a.y * b.x);
+    }
+
+    public double dot(Vec3 other) {
+        return x * other.x + y * other.y + z * other.z;
+    }
+
+    public double norm() {
+        return Math.sqrt(dot(this));
+    }
+
+    /**
+     * Scale to unit length, a zero vector is left unchanged
+     */
+    public Vec3 normalize() {
+        double norm = norm();
+        return norm > 0.0 ? scale(1.0 / norm) : this;
+    }
+
+    /**
+     * Write into a 3x1 matrix
+     *
+     * @return The matrix
+     */
+    public SimpleMatrix copyTo(SimpleMatrix matrix) {
+        matrix.set(0, 0, x);
+        matrix.set(1, 0, y);
+        matrix.set(2, 0, z);
+        return matrix;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ")";
+    }
+}
@@ -0,0 +1,191 @@
+package frc.lib.tuning;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.lib.tuning.FeedforwardGains.GravityModel;
+
+/**
+ * Offline fitter for the logs of {@link frc.lib.structure.mechanisms.MechanismCharacterization}.
+ * Reads the "SysId/(mechanism)/" entries of a WPILOG, differentiates velocity within each test,
+ * and fits output = kS * sign(v) + kV * v + kA * a + kG * g(position) with ordinary least squares.
+ *
+ * Usage: FeedforwardFitter (log.wpilog) (mechanism) (gains.json) [none|constant|cosine] [volts|amps]
+ * or ./gradlew fitFeedforward -PfitArgs="..."
+ */
+public final class FeedforwardFitter {
+
+    private static final double MIN_VELOCITY = 0.01; // output units per second, sign of v is unreliable below
+
+    private FeedforwardFitter() {
+        throw new UnsupportedOperationException("This is a utility class!");
+    }
+
+    /**
+     * One logged loop cycle
+     */
+    private static class Sample {
+        double timestamp; // seconds
+        String state;
+        double output;
+        double position;
+        double velocity;
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: FeedforwardFitter <log.wpilog> <mechanism> <gains.json> "
+                    + "[none|constant|cosine] [volts|amps]");
+            System.exit(1);
+        }
+        GravityModel gravityModel = args.length > 3
+                ? GravityModel.valueOf(args[3].toUpperCase())
+                : GravityModel.NONE;
+        String outputUnit = args.length > 4 ? args[4] : "volts";
+
+        List<Sample> samples = readSamples(args[0], args[1]);
+        FeedforwardGains gains = fit(samples, gravityModel);
+        gains.mechanism = args[1];
+        gains.outputUnit = outputUnit;
+        gains.save(new File(args[2]));
+
+        System.out.printf("kS %.5f  kV %.5f  kA %.5f  kG %.5f  (%s)%n", gains.kS, gains.kV, gains.kA,
+                gains.kG, outputUnit);
+        System.out.printf("%d samples, R² %.4f, RMSE %.4f, written to %s%n", gains.samples,
+                gains.rSquared, gains.rmse, args[2]);
+    }
+
+    /**
+     * Read the characterization samples of a mechanism. AdvantageKit only writes values that
+     * changed, so every entry is carried forward to the next timestamp
+     *
+     * @param path Path of the WPILOG
+     * @param mechanism Mechanism name
+     * @return Samples in time order
+     */
+    static List<Sample> readSamples(String path, String mechanism) throws IOException {
+        DataLogReader reader = new DataLogReader(path);
+        if (!reader.isValid()) {
+            throw new IOException("Not a valid WPILOG: " + path);
+        }
+
+        String prefix = "SysId/" + mechanism + "/";
+        Map<Integer, String> fields = new HashMap<>();
+        TreeMap<Long, Map<String, Object>> updates = new TreeMap<>();
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                int index = start.name.indexOf(prefix);
+                if (index >= 0) {
+                    fields.put(start.entry, start.name.substring(index + prefix.length()));
+                }
+            } else if (!record.isControl()) {
+                String field = fields.get(record.getEntry());
+                if (field == null) {
+                    continue;
+                }
+                Object value = field.equals("State") ? record.getString() : (Object) record.getDouble();
+                updates.computeIfAbsent(record.getTimestamp(), t -> new HashMap<>()).put(field, value);
+            }
+        }
+
+        List<Sample> samples = new ArrayList<>();
+        Sample last = new Sample();
+        last.state = "none";
+        for (Map.Entry<Long, Map<String, Object>> update : updates.entrySet()) {
+            Sample sample = new Sample();
+            sample.timestamp = update.getKey() / 1e6;
+            sample.state = (String) update.getValue().getOrDefault("State", last.state);
+            sample.output = (Double) update.getValue().getOrDefault("Output", last.output);
+            sample.position = (Double) update.getValue().getOrDefault("Position", last.position);
+            sample.velocity = (Double) update.getValue().getOrDefault("Velocity", last.velocity);
+            samples.add(sample);
+            last = sample;
+        }
+        return samples;
+    }
+
+    private static boolean isActive(String state) {
+        return state != null && !state.isEmpty() && !state.equalsIgnoreCase("none")
+                && !state.equals("kNone");
+    }
+
+    /**
+     * Fit the gains with ordinary least squares. Acceleration is the central difference of the
+     * velocity within one test, samples at the ends of a test and near standstill are dropped
+     *
+     * @param samples Samples in time order
+     * @param gravityModel Gravity term to fit
+     * @return Fitted gains
+     */
+    static FeedforwardGains fit(List<Sample> samples, GravityModel gravityModel) {
+        int columns = gravityModel == GravityModel.NONE ? 3 : 4;
+        List<double[]> rows = new ArrayList<>();
+        List<Double> outputs = new ArrayList<>();
+
+        for (int i = 1; i < samples.size() - 1; i++) {
+            Sample previous = samples.get(i - 1);
+            Sample sample = samples.get(i);
+            Sample next = samples.get(i + 1);
+            if (!isActive(sample.state) || !sample.state.equals(previous.state)
+                    || !sample.state.equals(next.state) || Math.abs(sample.velocity) < MIN_VELOCITY) {
+                continue;
+            }
+            double acceleration = (next.velocity - previous.velocity) / (next.timestamp - previous.timestamp);
+
+            double[] row = new double[columns];
+            row[0] = Math.signum(sample.velocity);
+            row[1] = sample.velocity;
+            row[2] = acceleration;
+            if (gravityModel == GravityModel.CONSTANT) {
+                row[3] = 1.0;
+            } else if (gravityModel == GravityModel.COSINE) {
+                row[3] = Math.cos(sample.position);
+            }
+            rows.add(row);
+            outputs.add(sample.output);
+        }
+        if (rows.size() <= columns) {
+            throw new IllegalArgumentException("Not enough characterization samples: " + rows.size());
+        }
+
+        SimpleMatrix x = new SimpleMatrix(rows.size(), columns);
+        SimpleMatrix y = new SimpleMatrix(rows.size(), 1);
+        for (int i = 0; i < rows.size(); i++) {
+            for (int j = 0; j < columns; j++) {
+                x.set(i, j, rows.get(i)[j]);
+            }
+            y.set(i, 0, outputs.get(i));
+        }
+        // Least squares solution for a tall matrix
+        SimpleMatrix beta = x.solve(y);
+
+        SimpleMatrix residuals = y.minus(x.mult(beta));
+        double mean = y.elementSum() / y.getNumRows();
+        double totalSquares = 0.0;
+        for (int i = 0; i < y.getNumRows(); i++) {
+            totalSquares += (y.get(i, 0) - mean) * (y.get(i, 0) - mean);
+        }
+        double residualSquares = residuals.dot(residuals);
+
+        FeedforwardGains gains = new FeedforwardGains();
+        gains.gravityModel = gravityModel;
+        gains.kS = beta.get(0, 0);
+        gains.kV = beta.get(1, 0);
+        gains.kA = beta.get(2, 0);
+        gains.kG = columns > 3 ? beta.get(3, 0) : 0.0;
+        gains.samples = rows.size();
+        gains.rSquared = totalSquares > 0.0 ? 1.0 - residualSquares / totalSquares : 1.0;
+        gains.rmse = Math.sqrt(residualSquares / rows.size());
+        return gains;
+    }
+}
@@ -0,0 +1,120 @@
+package frc.lib.tuning;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.lib.structure.motors.MotorConfig;
+
+/**
+ * Feedforward gains fitted by {@link FeedforwardFitter}, stored as JSON. Gain files deployed to
+ * deploy/gains/(mechanism).json can be loaded on the robot and applied to a {@link MotorConfig}.
+ * The gains are in the unit of the characterization output: volts, or amps for torque current.
+ * Only amps can be applied to a motor, whose closed loop runs on torque current.
+ */
+public class FeedforwardGains {
+
+    public enum GravityModel {
+        /** No gravity term (flywheels, turrets) */
+        NONE,
+        /** Constant gravity (elevators) */
+        CONSTANT,
+        /** Gravity times the cosine of the position (arms, 0 = horizontal) */
+        COSINE
+    }
+
+    // KrakenIO and KrakenSimIO close the loop on torque current (FOC), so Slot0 gains are amps
+    public static final String CLOSED_LOOP_UNIT = "amps";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public String mechanism;
+    public String outputUnit; // "volts" or "amps"
+    public GravityModel gravityModel = GravityModel.NONE;
+
+    public double kS = 0;
+    public double kV = 0;
+    public double kA = 0;
+    public double kG = 0;
+
+    // fit quality
+    public int samples = 0;
+    public double rSquared = 0;
+    public double rmse = 0;
+
+    /**
+     * Copy the gains and the gravity model into a motor configuration. Gains fitted in another unit
+     * than the closed-loop output (e.g. volts) are rejected, kV and kS in volts describe back-EMF
+     * and losses that torque current control does not see, so they cannot be converted
+     *
+     * @param config Configuration to update
+     * @return false if the gains were rejected and the configuration was not changed
+     */
+    public boolean applyTo(MotorConfig config) {
+        if (!CLOSED_LOOP_UNIT.equalsIgnoreCase(outputUnit)) {
+            DriverStation.reportWarning("Gains of " + mechanism + " are in " + outputUnit
+                    + ", the closed loop needs " + CLOSED_LOOP_UNIT
+                    + ": characterize with torque current and fit again", false);
+            return false;
+        }
+        config.kS = kS;
+        config.kV = kV;
+        config.kA = kA;
+        switch (gravityModel) {
+            case COSINE:
+                config.kG = kG;
+                config.gravityType = MotorConfig.GravityType.ARM_COSINE;
+                break;
+            case CONSTANT:
+                config.kG = kG;
+                config.gravityType = MotorConfig.GravityType.ELEVATOR_STATIC;
+                break;
+            default:
+                config.kG = 0;
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Write the gains to a JSON file
+     */
+    public void save(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, this);
+    }
+
+    /**
+     * Read gains from a JSON file
+     */
+    public static FeedforwardGains load(File file) throws IOException {
+        return MAPPER.readValue(file, FeedforwardGains.class);
+    }
+
+    /**
+     * Read the gains of a mechanism from deploy/gains/(mechanism).json
+     *
+     * @param mechanism Mechanism name
+     * @return Gains, or empty if there is no gain file or it cannot be read
+     */
+    public static Optional<FeedforwardGains> loadFromDeploy(String mechanism) {
+        File file = new File(Filesystem.getDeployDirectory(), "gains/" + mechanism + ".json");
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(load(file));
+        } catch (IOException e) {
+            DriverStation.reportWarning("Failed to read gains " + file + ": " + e.getMessage(), false);
+            return Optional.empty();
+        }
+    }
+}
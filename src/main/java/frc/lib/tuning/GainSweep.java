@@ -0,0 +1,332 @@
+package frc.lib.tuning;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.structure.configBase;
+import frc.lib.structure.inputBase;
+import frc.lib.structure.requestBase;
+import frc.lib.structure.mechanisms.RotatingMechanism;
+import frc.lib.structure.mechanisms.SetPoint;
+import frc.lib.structure.motors.KrakenSimIO;
+import frc.lib.structure.motors.MotorConfig;
+import frc.lib.structure.motors.SimMotorWorld;
+import frc.lib.structure.physics.physicalProperties;
+
+/**
+ * Monte-Carlo / grid sweep of motor gains and arm parameters. Every candidate is an independent
+ * headless simulation of a {@link RotatingMechanism} (horizontal axis, gravity acting) following a
+ * trapezoid profile from 0 to the goal angle. Each candidate owns its own manual
+ * {@link SimMotorWorld}, so candidates share no mutable state and run in parallel on a fork-join
+ * pool. Mechanisms are subsystems and register with the (not thread-safe) command scheduler, so
+ * they are constructed and removed serially on the calling thread.
+ *
+ * Run with ./gradlew sweepGains
+ */
+public class GainSweep {
+
+    private static final double GRAVITY = 9.81;
+    private static final double CONTROL_PERIOD = 0.02; // seconds, same as the robot loop
+
+    private final MotorConfig baseConfig;
+    private final double goal;
+    private final double duration;
+
+    // Settling band: the larger of the absolute tolerance and a fraction of the move
+    public double settlingTolerance = 0.02; // radians
+    public double settlingFraction = 0.02;
+    // Weights of the ranking cost
+    public double rmsWeight = 10.0;
+    public double overshootWeight = 1.0;
+
+    /**
+     * One point of the sweep: motor gains and arm parameters
+     */
+    public static class Candidate {
+        public double kP;
+        public double kI;
+        public double kD;
+        public double mass; // kg
+        public double cgDistance; // meters from the pivot
+        public double friction; // N⋅m at the arm
+
+        public Candidate(double kP, double kI, double kD, double mass, double cgDistance, double friction) {
+            this.kP = kP;
+            this.kI = kI;
+            this.kD = kD;
+            this.mass = mass;
+            this.cgDistance = cgDistance;
+            this.friction = friction;
+        }
+    }
+
+    /**
+     * Score of one candidate
+     */
+    public static class Result {
+        public final Candidate candidate;
+        public double settlingTime = Double.POSITIVE_INFINITY; // seconds, infinite if never settled
+        public double overshoot = 0.0; // fraction of the move
+        public double peakCurrent = 0.0; // amps, sampled at the control rate
+        public double trackingRms = 0.0; // radians from the profile
+        public double cost = Double.POSITIVE_INFINITY;
+
+        Result(Candidate candidate) {
+            this.candidate = candidate;
+        }
+    }
+
+    /**
+     * Create a sweep
+     *
+     * @param baseConfig Motor configuration, the gains are overridden by each candidate
+     * @param goal Goal angle in radians (0 is horizontal)
+     * @param duration Simulated time per candidate in seconds
+     */
+    public GainSweep(MotorConfig baseConfig, double goal, double duration) {
+        this.baseConfig = baseConfig;
+        this.goal = goal;
+        this.duration = duration;
+    }
+
+    /**
+     * Build the full grid of candidates
+     */
+    public static List<Candidate> grid(double[] kPs, double[] kIs, double[] kDs, double[] masses,
+            double[] cgDistances, double[] frictions) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (double kP : kPs) {
+            for (double kI : kIs) {
+                for (double kD : kDs) {
+                    for (double mass : masses) {
+                        for (double cgDistance : cgDistances) {
+                            for (double friction : frictions) {
+                                candidates.add(new Candidate(kP, kI, kD, mass, cgDistance, friction));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Draw candidates uniformly between two corners
+     *
+     * @param count Number of candidates
+     * @param min Lower bound of every parameter
+     * @param max Upper bound of every parameter
+     * @param seed Random seed, the same seed gives the same candidates
+     */
+    public static List<Candidate> random(int count, Candidate min, Candidate max, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            candidates.add(new Candidate(
+                    uniform(random, min.kP, max.kP),
+                    uniform(random, min.kI, max.kI),
+                    uniform(random, min.kD, max.kD),
+                    uniform(random, min.mass, max.mass),
+                    uniform(random, min.cgDistance, max.cgDistance),
+                    uniform(random, min.friction, max.friction)));
+        }
+        return candidates;
+    }
+
+    private static double uniform(SplittableRandom random, double min, double max) {
+        return max > min ? random.nextDouble(min, max) : min;
+    }
+
+    /**
+     * Simulate every candidate in parallel and rank them
+     *
+     * @param candidates Candidates to simulate
+     * @param parallelism Number of worker threads
+     * @return Results sorted by cost, best first
+     */
+    public List<Result> run(List<Candidate> candidates, int parallelism)
+            throws InterruptedException, ExecutionException {
+        // Serial: subsystems register with the command scheduler
+        List<Trial> trials = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            trials.add(new Trial(candidate));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<Result> results;
+        try {
+            results = pool.submit(() -> trials.parallelStream().map(Trial::simulate)
+                    .collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        for (Trial trial : trials) {
+            CommandScheduler.getInstance().unregisterSubsystem(trial.mechanism);
+        }
+
+        results.sort(Comparator.comparingDouble((Result result) -> result.cost)
+                .thenComparingDouble(result -> result.trackingRms));
+        return results;
+    }
+
+    /**
+     * Print the best results as a table
+     *
+     * @param results Ranked results
+     * @param rows Maximum number of rows
+     */
+    public static void printTable(List<Result> results, int rows) {
+        System.out.printf("%4s %8s %8s %8s %6s %6s %7s | %9s %9s %8s %9s %8s%n", "rank", "kP", "kI", "kD",
+                "mass", "cg", "fric", "settle s", "overshoot", "peak A", "rms rad", "cost");
+        for (int i = 0; i < Math.min(rows, results.size()); i++) {
+            Result result = results.get(i);
+            Candidate candidate = result.candidate;
+            System.out.printf("%4d %8.3f %8.3f %8.3f %6.2f %6.3f %7.3f | %9.3f %8.1f%% %8.1f %9.4f %8.3f%n",
+                    i + 1, candidate.kP, candidate.kI, candidate.kD, candidate.mass, candidate.cgDistance,
+                    candidate.friction, result.settlingTime, result.overshoot * 100.0, result.peakCurrent,
+                    result.trackingRms, result.cost);
+        }
+    }
+
+    /**
+     * One candidate: its own world, motor and mechanism
+     */
+    private class Trial {
+        final Candidate candidate;
+        final SimMotorWorld world = SimMotorWorld.manual(SimMotorWorld.DEFAULT_SUBSTEP);
+        final KrakenSimIO motor;
+        final RotatingMechanism<configBase, inputBase, requestBase> mechanism;
+
+        Trial(Candidate candidate) {
+            this.candidate = candidate;
+
+            MotorConfig config = copyConfig(baseConfig);
+            config.kP = candidate.kP;
+            config.kI = candidate.kI;
+            config.kD = candidate.kD;
+            motor = new KrakenSimIO(config, world);
+
+            // Uniform rod about a horizontal (y) axis, CG at the middle of the rod
+            double length = 2.0 * candidate.cgDistance;
+            double rodInertia = candidate.mass * length * length / 12.0;
+            SimpleMatrix cg = new SimpleMatrix(3, 1, true, candidate.cgDistance, 0.0, 0.0);
+            SimpleMatrix moi = new SimpleMatrix(3, 3, true, 0.0, 0.0, 0.0, 0.0, rodInertia, 0.0, 0.0, 0.0,
+                    rodInertia);
+            physicalProperties properties = new physicalProperties(candidate.mass, cg, moi, Optional.empty());
+            mechanism = new RotatingMechanism<>("SweepArm", properties,
+                    new SimpleMatrix(3, 1, true, 0.0, 1.0, 0.0), new SimpleMatrix(3, 1));
+            mechanism.registerMotor(motor, config);
+
+            motor.setExternalLoad(0.0, candidate.mass * GRAVITY * candidate.cgDistance, candidate.friction);
+        }
+
+        Result simulate() {
+            Result result = new Result(candidate);
+            TrapezoidProfile profile = new TrapezoidProfile(
+                    new TrapezoidProfile.Constraints(baseConfig.maxVel, baseConfig.maxAcc));
+            TrapezoidProfile.State start = new TrapezoidProfile.State(0.0, 0.0);
+            TrapezoidProfile.State goalState = new TrapezoidProfile.State(goal, 0.0);
+            SetPoint setpoint = new SetPoint(0.0, 0.0, 0.0, 0.0);
+
+            double move = Math.abs(goal);
+            double band = Math.max(settlingTolerance, settlingFraction * move);
+            double lastOutsideBand = 0.0;
+            double squaredErrorSum = 0.0;
+            double maxPastGoal = 0.0;
+            int samples = (int) Math.round(duration / CONTROL_PERIOD);
+
+            for (int i = 0; i < samples; i++) {
+                double t = i * CONTROL_PERIOD;
+                mechanism.updateMechanismState();
+                double angle = mechanism.getCurrentAngle();
+
+                TrapezoidProfile.State state = profile.calculate(t, start, goalState);
+                double trackingError = state.position - angle;
+                squaredErrorSum += trackingError * trackingError;
+                maxPastGoal = Math.max(maxPastGoal, Math.copySign(1.0, goal) * (angle - goal));
+                if (Math.abs(goal - angle) > band) {
+                    lastOutsideBand = t + CONTROL_PERIOD;
+                }
+                result.peakCurrent = Math.max(result.peakCurrent, Math.abs(mechanism.getMotorInputs(0).current));
+
+                setpoint.position = state.position;
+                setpoint.velocity = state.velocity;
+                setpoint.acceleration = 0.0;
+                mechanism.setTargetSetpoint(setpoint);
+                mechanism.executeControl();
+
+                world.advanceBy(CONTROL_PERIOD);
+            }
+
+            result.trackingRms = Math.sqrt(squaredErrorSum / samples);
+            result.overshoot = move > 0.0 ? maxPastGoal / move : 0.0;
+            if (lastOutsideBand < duration) {
+                result.settlingTime = lastOutsideBand;
+                result.cost = result.settlingTime + rmsWeight * result.trackingRms
+                        + overshootWeight * result.overshoot;
+            }
+            return result;
+        }
+    }
+
+    private static MotorConfig copyConfig(MotorConfig source) {
+        MotorConfig config = new MotorConfig(source.name, source.ID, source.canbus);
+        config.kT = source.kT;
+        config.maxVel = source.maxVel;
+        config.maxAcc = source.maxAcc;
+        config.gearRatio = source.gearRatio;
+        config.supplyCurrentLimitEnabled = source.supplyCurrentLimitEnabled;
+        config.supplyCurrentLimit = source.supplyCurrentLimit;
+        config.statorCurrentLimitEnabled = source.statorCurrentLimitEnabled;
+        config.statorCurrentLimit = source.statorCurrentLimit;
+        return config;
+    }
+
+    /**
+     * Sweep the gains of the test arm (see RotatingMechanismTestSubsystem) over a range of arm
+     * masses and frictions, and print the best candidates
+     */
+    public static void main(String... args) throws InterruptedException, ExecutionException {
+        if (!HAL.initialize(500, 0)) {
+            throw new IllegalStateException("Failed to initialize the HAL");
+        }
+
+        MotorConfig config = new MotorConfig("ArmSweepMotor", 2, "rio");
+        config.maxVel = 10.0; // rad/s
+        config.maxAcc = 20.0; // rad/s²
+        config.gearRatio = 10.0;
+        config.supplyCurrentLimitEnabled = true;
+        config.supplyCurrentLimit = 40.0;
+        config.statorCurrentLimitEnabled = true;
+        config.statorCurrentLimit = 40.0;
+
+        List<Candidate> candidates = grid(
+                new double[] {5, 10, 20, 40, 80, 160},
+                new double[] {0},
+                new double[] {0, 1, 2, 4, 8},
+                new double[] {1.5, 2.0, 2.5},
+                new double[] {0.25},
+                new double[] {0.0, 0.5});
+
+        GainSweep sweep = new GainSweep(config, Math.PI / 2.0, 3.0);
+        long start = System.nanoTime();
+        List<Result> results = sweep.run(candidates, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%d candidates in %.2f s on %d threads%n", candidates.size(),
+                (System.nanoTime() - start) / 1e9, Runtime.getRuntime().availableProcessors());
+        printTable(results, 20);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,141 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+import frc.robot.Constants.OperatorConstants;
+
+/**
+ * Runs the robot in simulation without the GUI or a Driver Station, as fast as the CPU allows.
+ * Robot timing is paused and stepped one loop at a time while a scripted sequence of modes and
+ * controller buttons drives the robot. The AdvantageKit log is written to the path given by the
+ * {@value #LOG_PATH_PROPERTY} system property. At the end the speedup over real time and the
+ * distribution of loop times are printed.
+ *
+ * <p>Run with ./gradlew simulateHeadless
+ */
+public final class HeadlessSimRunner {
+  public static final String LOG_PATH_PROPERTY = "frc.headless.logPath";
+
+  private static final double LOOP_PERIOD = 0.02; // seconds, same as the robot
+
+  private HeadlessSimRunner() {}
+
+  private enum Mode {
+    DISABLED,
+    AUTONOMOUS,
+    TELEOP
+  }
+
+  /** One step of the match script: a mode held for a duration with some buttons pressed. */
+  private static class Phase {
+    final Mode mode;
+    final double duration;
+    final boolean aButton;
+    final boolean bButton;
+
+    Phase(Mode mode, double duration, boolean aButton, boolean bButton) {
+      this.mode = mode;
+      this.duration = duration;
+      this.aButton = aButton;
+      this.bButton = bButton;
+    }
+  }
+
+  private static final List<Phase> SCRIPT =
+      List.of(
+          new Phase(Mode.DISABLED, 1.0, false, false),
+          new Phase(Mode.AUTONOMOUS, 15.0, false, false),
+          new Phase(Mode.DISABLED, 1.0, false, false),
+          new Phase(Mode.TELEOP, 5.0, false, false),
+          new Phase(Mode.TELEOP, 10.0, true, false),
+          new Phase(Mode.TELEOP, 10.0, false, true),
+          new Phase(Mode.TELEOP, 5.0, false, false),
+          new Phase(Mode.DISABLED, 1.0, false, false));
+
+  public static void main(String... args) throws InterruptedException {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Failed to initialize the HAL");
+    }
+    if (System.getProperty(LOG_PATH_PROPERTY) == null) {
+      System.setProperty(LOG_PATH_PROPERTY, "logs/headless.wpilog");
+    }
+
+    // Time only moves when stepped below
+    SimHooks.pauseTiming();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setEnabled(false);
+    DriverStationSim.notifyNewData();
+
+    Robot robot = new Robot();
+    Thread robotThread = new Thread(robot::startCompetition, "HeadlessRobot");
+    robotThread.setDaemon(true);
+    robotThread.start();
+
+    XboxControllerSim controller = new XboxControllerSim(OperatorConstants.kDriverControllerPort);
+    int totalLoops = 0;
+    for (Phase phase : SCRIPT) {
+      totalLoops += (int) Math.round(phase.duration / LOOP_PERIOD);
+    }
+    long[] loopNanos = new long[totalLoops];
+    int loop = 0;
+
+    long start = System.nanoTime();
+    for (Phase phase : SCRIPT) {
+      applyPhase(phase, controller);
+      int loops = (int) Math.round(phase.duration / LOOP_PERIOD);
+      for (int i = 0; i < loops; i++) {
+        long loopStart = System.nanoTime();
+        // Returns once the robot loop woken by this step has run
+        SimHooks.stepTiming(LOOP_PERIOD);
+        loopNanos[loop++] = System.nanoTime() - loopStart;
+      }
+    }
+    double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+    robot.endCompetition();
+    robotThread.join(1000);
+    Logger.end();
+
+    report(loopNanos, totalLoops * LOOP_PERIOD, wallSeconds);
+    System.exit(0);
+  }
+
+  private static void applyPhase(Phase phase, XboxControllerSim controller) {
+    DriverStationSim.setAutonomous(phase.mode == Mode.AUTONOMOUS);
+    DriverStationSim.setTest(false);
+    DriverStationSim.setEnabled(phase.mode != Mode.DISABLED);
+    controller.setAButton(phase.aButton);
+    controller.setBButton(phase.bButton);
+    controller.notifyNewData();
+    DriverStationSim.notifyNewData();
+  }
+
+  private static void report(long[] loopNanos, double simulatedSeconds, double wallSeconds) {
+    long[] sorted = loopNanos.clone();
+    Arrays.sort(sorted);
+    System.out.printf(
+        "Simulated %.1f s in %.2f s of wall time, speedup %.1fx%n",
+        simulatedSeconds, wallSeconds, simulatedSeconds / wallSeconds);
+    System.out.printf(
+        "Loop time ms: p50 %.3f  p90 %.3f  p99 %.3f  max %.3f%n",
+        percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+        sorted[sorted.length - 1] / 1e6);
+    System.out.println("Log written to " + System.getProperty(LOG_PATH_PROPERTY));
+  }
+
+  private static double percentile(long[] sorted, double fraction) {
+    int index = (int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length));
+    return sorted[index] / 1e6;
+  }
+}
@@ -11,6 +11,8 @@ import org.littletonrobotics.junction.wpilog.WPILOGWriter;
 
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.structure.motors.CanBusSignalRegistry;
+import frc.lib.structure.motors.SimMotorWorld;
 
 /**
  * The methods in this class are called automatically corresponding to each
@@ -38,6 +40,10 @@ public class Robot extends LoggedRobot {
     if (isReal()) {
       Logger.addDataReceiver(new WPILOGWriter()); // Log to a USB stick ("/U/logs")
       Logger.addDataReceiver(new NT4Publisher()); // Publish data to NetworkTables
+    } else if (System.getProperty(HeadlessSimRunner.LOG_PATH_PROPERTY) != null) {
+      // Headless simulation: timing is stepped by the runner, nobody reads NetworkTables
+      setUseTiming(true);
+      Logger.addDataReceiver(new WPILOGWriter(System.getProperty(HeadlessSimRunner.LOG_PATH_PROPERTY)));
     } else {
       // For simulation with real Driver Station, disable GUI and use timing
       setUseTiming(true); // Use timing for Driver Station compatibility
@@ -62,6 +68,11 @@ public class Robot extends LoggedRobot {
    */
   @Override
   public void robotPeriodic() {
+    // Refresh all motor status signals with one wait per CAN bus, every bus on
+    // its own thread, joined before any subsystem reads its inputs and runs
+    // control.
+    CanBusSignalRegistry.refreshAll();
+
     // Runs the Scheduler. This is responsible for polling buttons, adding
     // newly-scheduled
     // commands, running already-scheduled commands, removing finished or
@@ -135,5 +146,7 @@ public class Robot extends LoggedRobot {
   /** This function is called periodically whilst in simulation. */
   @Override
   public void simulationPeriodic() {
+    // Step every simulated motor to the current simulated time
+    SimMotorWorld.getDefault().update();
   }
 }
@@ -4,9 +4,14 @@
 
 package frc.robot;
 
+import org.littletonrobotics.junction.Logger;
+
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import frc.lib.structure.motors.CanBusBudgeter;
+import frc.lib.structure.motors.DeviceBringupService;
 import frc.robot.Constants.OperatorConstants;
 import frc.robot.commands.Autos;
 import frc.robot.commands.ExampleCommand;
@@ -41,8 +46,16 @@ public class RobotContainer {
    * The container for the robot. Contains subsystems, OI devices, and commands.
    */
   public RobotContainer() {
+    long constructionStart = System.nanoTime();
+
     // Configure the trigger bindings
     configureBindings();
+
+    // All motors exist now: wait for their concurrent bring-up, then check the
+    // CAN bus budget and downgrade signal rates if needed
+    DeviceBringupService.awaitAll(5.0);
+    CanBusBudgeter.enforce(0.8, true);
+    Logger.recordOutput("RobotContainer/ReadySeconds", (System.nanoTime() - constructionStart) / 1e9);
   }
 
   /**
@@ -72,6 +85,12 @@ public class RobotContainer {
     // Schedule motor test command when A button is pressed
     m_driverController.a().whileTrue(new MotorTestCommand(m_motorTestSubsystem));
     m_driverController.b().whileTrue(new RotatingMechanismTestCommand(m_rotatingMechanismTestSubsystem));
+
+    // Characterize the test arm, fit the log with ./gradlew fitFeedforward
+    m_driverController.x().whileTrue(m_rotatingMechanismTestSubsystem.sysIdQuasistatic(SysIdRoutine.Direction.kForward));
+    m_driverController.y().whileTrue(m_rotatingMechanismTestSubsystem.sysIdQuasistatic(SysIdRoutine.Direction.kReverse));
+    m_driverController.rightBumper().whileTrue(m_rotatingMechanismTestSubsystem.sysIdDynamic(SysIdRoutine.Direction.kForward));
+    m_driverController.leftBumper().whileTrue(m_rotatingMechanismTestSubsystem.sysIdDynamic(SysIdRoutine.Direction.kReverse));
   }
 
   /**
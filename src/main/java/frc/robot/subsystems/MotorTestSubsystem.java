@@ -17,6 +17,8 @@ public class MotorTestSubsystem extends SubsystemBase {
     private KrakenSimIO motor;
     private MotorConfig config;
     private MotorInputs inputs = new MotorInputs();
+    // Reused for every command so the periodic loop does not allocate
+    private final MotorRequest request = new MotorRequest();
 
     // Test parameters
     private double targetPosition = 0.0;
@@ -89,12 +91,11 @@ public class MotorTestSubsystem extends SubsystemBase {
         isTestRunning = false;
 
         // Stop motor
-        MotorRequest stopRequest = new MotorRequest()
-                .withPosition(0.0)
+        request.withPosition(0.0)
                 .withVelocity(0.0)
                 .withAcceleration(0.0)
                 .withFeedforward(0.0);
-        motor.set(stopRequest);
+        motor.set(request);
 
         Logger.recordOutput("MotorTest/TestStopped", true);
     }
@@ -107,8 +108,7 @@ public class MotorTestSubsystem extends SubsystemBase {
         targetVelocity = velocity;
         targetAcceleration = acceleration;
 
-        MotorRequest request = new MotorRequest()
-                .withPosition(position)
+        request.withPosition(position)
                 .withVelocity(velocity)
                 .withAcceleration(acceleration)
                 .withFeedforward(0.0);
@@ -128,8 +128,7 @@ public class MotorTestSubsystem extends SubsystemBase {
             // Step 1: Move to 1 radian
             if (testStep != 1) {
                 testStep = 1;
-                MotorRequest request = new MotorRequest()
-                        .withPosition(1.0)
+                request.withPosition(1.0)
                         .withVelocity(0.5)
                         .withAcceleration(0)
                         .withFeedforward(0.0);
@@ -142,8 +141,7 @@ public class MotorTestSubsystem extends SubsystemBase {
             // Step 2: Move to -1 radian
             if (testStep != 2) {
                 testStep = 2;
-                MotorRequest request = new MotorRequest()
-                        .withPosition(-1.0)
+                request.withPosition(-1.0)
                         .withVelocity(0.5)
                         .withAcceleration(0)
                         .withFeedforward(0.0);
@@ -156,8 +154,7 @@ public class MotorTestSubsystem extends SubsystemBase {
             // Step 3: Return to 0 radian
             if (testStep != 3) {
                 testStep = 3;
-                MotorRequest request = new MotorRequest()
-                        .withPosition(0.0)
+                request.withPosition(0.0)
                         .withVelocity(0.5)
                         .withAcceleration(0)
                         .withFeedforward(0.0);
@@ -2,20 +2,24 @@ package frc.robot.subsystems;
 
 import org.littletonrobotics.junction.Logger;
 
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import frc.lib.structure.mechanisms.MechanismCharacterization;
 import frc.lib.structure.mechanisms.RotatingMechanism;
-import frc.lib.structure.mechanisms.SetPoint;
 import frc.lib.structure.motors.KrakenSimIO;
 import frc.lib.structure.motors.MotorConfig;
 import frc.lib.structure.motors.MotorInputs;
 import frc.lib.structure.motors.MotorRequest;
 import frc.lib.structure.physics.physicalProperties;
+import frc.lib.tuning.FeedforwardGains;
 
 public class RotatingMechanismTestSubsystem extends SubsystemBase {
     private final KrakenSimIO motorIO;
     private final RotatingMechanism rotatingMechanism;
     private final MotorConfig config;
     private final MotorRequest motorRequest;
+    private final MechanismCharacterization characterization;
 
     // Physical properties for the rotating mechanism (e.g., an arm)
     private static final double ARM_LENGTH = 0.5; // meters
@@ -41,6 +45,8 @@ public class RotatingMechanismTestSubsystem extends SubsystemBase {
         config.statorCurrentLimit = 40.0;
         config.updateFrequency = 100;
         config.isInnerSyncronized = true;
+        // Fitted feedforward gains, if a gain file was deployed
+        FeedforwardGains.loadFromDeploy("TestArm").ifPresent(gains -> gains.applyTo(config));
 
         // Create motor IO and inputs/outputs
         motorIO = new KrakenSimIO(config);
@@ -74,6 +80,7 @@ public class RotatingMechanismTestSubsystem extends SubsystemBase {
         // Create rotating mechanism
         rotatingMechanism = new RotatingMechanism("TestArm", physics, rotationAxis, pivotPoint);
         rotatingMechanism.registerMotor(motorIO, config);
+        characterization = new MechanismCharacterization(rotatingMechanism, true);
 
         // Log initial setup
         Logger.recordOutput("RotatingMechanismTest/Setup/ArmLength", ARM_LENGTH);
@@ -117,14 +124,33 @@ public class RotatingMechanismTestSubsystem extends SubsystemBase {
      * @param targetAcceleration Target angular acceleration in rad/s²
      */
     public void setTargetAngle(double targetAngle, double targetVelocity, double targetAcceleration) {
-        SetPoint setpoint = new SetPoint(targetAngle, targetVelocity, targetAcceleration, 0.0);
-        rotatingMechanism.setTargetSetpoint(setpoint);
+        rotatingMechanism.setTargetSetpoint(targetAngle, targetVelocity, targetAcceleration, 0.0);
 
         Logger.recordOutput("RotatingMechanismTest/Setpoint/Position", targetAngle);
         Logger.recordOutput("RotatingMechanismTest/Setpoint/Velocity", targetVelocity);
         Logger.recordOutput("RotatingMechanismTest/Setpoint/Acceleration", targetAcceleration);
     }
 
+    /**
+     * Get a quasistatic characterization command (torque current ramp)
+     * 
+     * @param direction Direction of the test
+     * @return Characterization command
+     */
+    public Command sysIdQuasistatic(SysIdRoutine.Direction direction) {
+        return characterization.quasistatic(direction);
+    }
+
+    /**
+     * Get a dynamic characterization command (torque current step)
+     * 
+     * @param direction Direction of the test
+     * @return Characterization command
+     */
+    public Command sysIdDynamic(SysIdRoutine.Direction direction) {
+        return characterization.dynamic(direction);
+    }
+
     /**
      * Get the current angle of the mechanism
      * 
@@ -0,0 +1,223 @@
+package frc.lib.structure.mechanisms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.structure.configBase;
+import frc.lib.structure.inputBase;
+import frc.lib.structure.requestBase;
+import frc.lib.structure.physics.physicalProperties;
+
+/**
+ * Recursive Newton-Euler results against the closed form equations of motion (from the
+ * Lagrangian) of small trees. Arms rotate about -y, so a positive angle lifts them from the
+ * horizontal +x direction
+ */
+class InverseDynamicsTest {
+
+    private static final double G = InverseDynamics.GRAVITY;
+    private static final double EPSILON = 1e-9;
+
+    private final List<Mechanism<?, ?, ?>> created = new ArrayList<>();
+
+    @BeforeAll
+    static void initializeHal() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Mechanism<?, ?, ?> mechanism : created) {
+            CommandScheduler.getInstance().unregisterSubsystem(mechanism);
+        }
+        created.clear();
+    }
+
+    @Test
+    void hangingArmHoldsGravityTorque() {
+        double m = 3.0;
+        double l = 0.4;
+        InverseDynamics dynamics = new InverseDynamics(
+                List.of(arm("Arm", m, 0.0, l, 0.0, 0.0)), new int[] {-1});
+        dynamics.update();
+        double[] zero = {0.0};
+        double[] effort = new double[1];
+
+        // Straight down the pivot carries the whole weight, the joint nothing
+        dynamics.calculate(new double[] {-Math.PI / 2.0}, zero, zero, effort);
+        assertEquals(0.0, effort[0], EPSILON);
+
+        dynamics.calculate(new double[] {0.0}, zero, zero, effort);
+        assertEquals(m * G * l, effort[0], EPSILON);
+
+        double angle = 0.7;
+        dynamics.calculate(new double[] {angle}, zero, zero, effort);
+        assertEquals(m * G * l * Math.cos(angle), effort[0], EPSILON);
+    }
+
+    @Test
+    void elevatorCarryingArmMatchesLagrangian() {
+        double carriageMass = 5.0;
+        double m = 2.0; // arm, point mass plus inertia about its CG
+        double l = 0.5;
+        double inertia = 0.03;
+        double pivotHeight = 0.3;
+
+        LinearMechanism<configBase, inputBase, requestBase> elevator = track(new LinearMechanism<>(
+                "Elevator", properties(carriageMass, 0.0, 0.0, 0.2, 0.0),
+                vector(0.0, 0.0, 1.0), vector(0.0, 0.0, 0.0)));
+        InverseDynamics dynamics = new InverseDynamics(
+                List.of(elevator, arm("Arm", m, pivotHeight, l, 0.0, inertia)), new int[] {-1, 0});
+        dynamics.update();
+
+        double z = 0.8;
+        double zVelocity = 1.2;
+        double zAcceleration = -3.0;
+        double theta = 0.6;
+        double thetaVelocity = -2.0;
+        double thetaAcceleration = 5.0;
+        double[] effort = new double[2];
+        dynamics.calculate(new double[] {z, theta}, new double[] {zVelocity, thetaVelocity},
+                new double[] {zAcceleration, thetaAcceleration}, effort);
+
+        double c = Math.cos(theta);
+        double s = Math.sin(theta);
+        double force = (carriageMass + m) * (zAcceleration + G)
+                + m * l * (c * thetaAcceleration - s * thetaVelocity * thetaVelocity);
+        double torque = (m * l * l + inertia) * thetaAcceleration + m * l * c * (zAcceleration + G);
+        assertEquals(force, effort[0], EPSILON);
+        assertEquals(torque, effort[1], EPSILON);
+    }
+
+    @Test
+    void doublePendulumMatchesLagrangian() {
+        double m1 = 1.5;
+        double m2 = 0.8;
+        double l1 = 0.6;
+        double l2 = 0.35;
+        InverseDynamics dynamics = new InverseDynamics(
+                List.of(arm("Shoulder", m1, 0.0, l1, 0.0, 0.0), arm("Elbow", m2, 0.0, l2, l1, 0.0)),
+                new int[] {-1, 0});
+        dynamics.update();
+
+        double q1 = 0.4;
+        double q2 = -1.1;
+        double v1 = 1.5;
+        double v2 = -0.7;
+        double a1 = -2.0;
+        double a2 = 3.5;
+        double[] effort = new double[2];
+        dynamics.calculate(new double[] {q1, q2}, new double[] {v1, v2}, new double[] {a1, a2},
+                effort);
+
+        double c2 = Math.cos(q2);
+        double s2 = Math.sin(q2);
+        double c1 = Math.cos(q1);
+        double c12 = Math.cos(q1 + q2);
+        double shoulder = (m1 * l1 * l1 + m2 * (l1 * l1 + l2 * l2 + 2.0 * l1 * l2 * c2)) * a1
+                + m2 * (l2 * l2 + l1 * l2 * c2) * a2
+                - m2 * l1 * l2 * s2 * (2.0 * v1 * v2 + v2 * v2)
+                + (m1 + m2) * G * l1 * c1 + m2 * G * l2 * c12;
+        double elbow = m2 * (l2 * l2 + l1 * l2 * c2) * a1 + m2 * l2 * l2 * a2
+                + m2 * l1 * l2 * s2 * v1 * v1 + m2 * G * l2 * c12;
+        assertEquals(shoulder, effort[0], EPSILON);
+        assertEquals(elbow, effort[1], EPSILON);
+    }
+
+    @Test
+    void incrementalMatchesFullRecalculation() {
+        LinearMechanism<configBase, inputBase, requestBase> elevator = track(new LinearMechanism<>(
+                "Elevator", properties(6.0, 0.0, 0.0, 0.2, 0.05),
+                vector(0.0, 0.0, 1.0), vector(0.0, 0.0, 0.0)));
+        List<Mechanism<?, ?, ?>> tree = List.of(elevator, arm("Arm", 3.0, 0.3, 0.4, 0.0, 0.04),
+                arm("Wrist", 1.0, 0.3, 0.1, 0.6, 0.01));
+        int[] parents = {-1, 0, 1};
+        InverseDynamics incremental = new InverseDynamics(tree, parents);
+        InverseDynamics reference = new InverseDynamics(tree, parents);
+        incremental.update();
+        reference.update();
+
+        double[] positions = {0.5, 0.3, -0.4};
+        double[] velocities = {0.8, 1.1, -2.0};
+        double[] accelerations = {-1.5, 2.5, 4.0};
+        double[] efforts = new double[3];
+        double[] expected = new double[3];
+
+        incremental.calculate(positions, velocities, accelerations, efforts);
+        assertRecomputations(incremental, 3, 3);
+
+        // Nothing changed: every link is reused
+        assertMatchesReference(incremental, reference, positions, velocities, accelerations,
+                efforts, expected);
+        assertRecomputations(incremental, 0, 0);
+
+        // Only the wrist: its motion, and the efforts from it down to the base
+        positions[2] = 0.2;
+        accelerations[2] = -1.0;
+        assertMatchesReference(incremental, reference, positions, velocities, accelerations,
+                efforts, expected);
+        assertRecomputations(incremental, 1, 3);
+
+        // Only the arm: the arm and the wrist it carries move differently
+        positions[1] = 0.9;
+        velocities[1] = -0.5;
+        assertMatchesReference(incremental, reference, positions, velocities, accelerations,
+                efforts, expected);
+        assertRecomputations(incremental, 2, 3);
+    }
+
+    private static void assertMatchesReference(InverseDynamics incremental,
+            InverseDynamics reference, double[] positions, double[] velocities,
+            double[] accelerations, double[] efforts, double[] expected) {
+        incremental.calculate(positions, velocities, accelerations, efforts);
+        reference.invalidate();
+        reference.calculate(positions, velocities, accelerations, expected);
+        assertRecomputations(reference, expected.length, expected.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], efforts[i], EPSILON);
+        }
+    }
+
+    private static void assertRecomputations(InverseDynamics dynamics, int forward, int backward) {
+        assertEquals(forward, dynamics.getForwardRecomputations(), "forward recomputations");
+        assertEquals(backward, dynamics.getBackwardRecomputations(), "backward recomputations");
+    }
+
+    /**
+     * Arm about -y with its pivot at (pivotX, 0, pivotHeight) and its CG a length further along +x
+     * in the home configuration
+     */
+    private RotatingMechanism<configBase, inputBase, requestBase> arm(String name, double mass,
+            double pivotHeight, double length, double pivotX, double inertia) {
+        return track(new RotatingMechanism<>(name,
+                properties(mass, pivotX + length, 0.0, pivotHeight, inertia),
+                vector(0.0, -1.0, 0.0), vector(pivotX, 0.0, pivotHeight)));
+    }
+
+    private <T extends Mechanism<?, ?, ?>> T track(T mechanism) {
+        created.add(mechanism);
+        return mechanism;
+    }
+
+    private static physicalProperties properties(double mass, double x, double y, double z,
+            double inertia) {
+        return new physicalProperties(mass, vector(x, y, z),
+                new SimpleMatrix(3, 3, true, inertia, 0, 0, 0, inertia, 0, 0, 0, inertia),
+                Optional.empty());
+    }
+
+    private static SimpleMatrix vector(double x, double y, double z) {
+        return new SimpleMatrix(3, 1, true, x, y, z);
+    }
+}
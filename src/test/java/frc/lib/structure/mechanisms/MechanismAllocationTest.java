@@ -0,0 +1,85 @@
+package frc.lib.structure.mechanisms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.structure.configBase;
+import frc.lib.structure.inputBase;
+import frc.lib.structure.requestBase;
+import frc.lib.structure.motors.KrakenSimIO;
+import frc.lib.structure.motors.MotorConfig;
+import frc.lib.structure.motors.SimMotorWorld;
+import frc.lib.structure.physics.physicalProperties;
+
+/**
+ * Mechanism.executeControl must not allocate in steady state: a simulated arm with a leader and an
+ * opposed follower is warmed up, then the bytes allocated by the thread over many control calls
+ * must be zero
+ */
+class MechanismAllocationTest {
+
+    private static final int WARMUP_CALLS = 200_000;
+    private static final int MEASURED_CALLS = 1_000_000;
+
+    private RotatingMechanism<configBase, inputBase, requestBase> arm;
+
+    @BeforeEach
+    void setUp() {
+        assertTrue(HAL.initialize(500, 0));
+
+        physicalProperties properties = new physicalProperties(4.0,
+                new SimpleMatrix(3, 1, true, 0.3, 0.0, 0.0),
+                new SimpleMatrix(3, 3, true, 0.05, 0, 0, 0, 0.4, 0, 0, 0, 0.4), Optional.empty());
+        arm = new RotatingMechanism<>("AllocationTestArm", properties,
+                new SimpleMatrix(3, 1, true, 0.0, 1.0, 0.0), new SimpleMatrix(3, 1));
+
+        SimMotorWorld world = SimMotorWorld.manual(0.001);
+        MotorConfig leaderConfig = createConfig("AllocationTestLeader", 1);
+        MotorConfig followerConfig = createConfig("AllocationTestFollower", 2);
+        arm.registerMotor(new KrakenSimIO(leaderConfig, world), leaderConfig);
+        arm.registerMotor(new KrakenSimIO(followerConfig, world), followerConfig, 0, true);
+        arm.setTargetSetpoint(new SetPoint(0.5, 1.0, 2.0, 0.0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        CommandScheduler.getInstance().unregisterSubsystem(arm);
+    }
+
+    @Test
+    void executeControlDoesNotAllocate() {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            arm.executeControl();
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long startBytes = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            arm.executeControl();
+        }
+        long bytes = threads.getThreadAllocatedBytes(thread) - startBytes;
+
+        assertEquals(0, bytes, "executeControl allocated " + bytes + " bytes over " + MEASURED_CALLS + " calls");
+    }
+
+    private static MotorConfig createConfig(String name, int id) {
+        MotorConfig config = new MotorConfig(name, id, "rio");
+        config.kP = 40.0;
+        config.kD = 2.0;
+        config.kT = 1.0;
+        config.gearRatio = 50.0;
+        return config;
+    }
+}
@@ -0,0 +1,119 @@
+package frc.lib.structure.mechanisms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.structure.configBase;
+import frc.lib.structure.inputBase;
+import frc.lib.structure.requestBase;
+import frc.lib.structure.physics.physicalProperties;
+
+/**
+ * The feedforward of a standalone mechanism, along its joint axis, is the effort the motors must
+ * apply: the same effort InverseDynamics calculates for the single body
+ */
+class MechanismFeedforwardTest {
+
+    private static final double EPSILON = 1e-9;
+    // LinearMechanism's viscous friction, which InverseDynamics does not model
+    private static final double FRICTION = 0.1;
+
+    private static final double[] ANGLES = {-Math.PI / 2.0, -0.8, 0.0, 0.4, 1.2, Math.PI / 2.0, 2.5};
+    private static final double[] VELOCITIES = {-3.0, 0.0, 1.5};
+
+    private final List<Mechanism<?, ?, ?>> created = new ArrayList<>();
+
+    @BeforeAll
+    static void initializeHal() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Mechanism<?, ?, ?> mechanism : created) {
+            CommandScheduler.getInstance().unregisterSubsystem(mechanism);
+        }
+        created.clear();
+    }
+
+    @Test
+    void rotatingMatchesInverseDynamics() {
+        SimpleMatrix axis = vector(0.0, -1.0, 0.0);
+        RotatingMechanism<configBase, inputBase, requestBase> arm = track(new RotatingMechanism<>(
+                "Arm", properties(3.0, 0.45, 0.0, 0.6, 0.02), axis, vector(0.1, 0.0, 0.5)));
+        InverseDynamics dynamics = new InverseDynamics(List.of(arm), new int[] {-1});
+        dynamics.update();
+        double[] effort = new double[1];
+
+        for (double angle : ANGLES) {
+            for (double velocity : VELOCITIES) {
+                arm.setCurrentAngle(angle);
+                arm.setAngularVelocity(velocity);
+                arm.setAngularAcceleration(0.0);
+                dynamics.calculate(new double[] {angle}, new double[] {velocity},
+                        new double[] {0.0}, effort);
+
+                assertEquals(effort[0], project(arm.getFeedforward(null), axis), EPSILON,
+                        "angle " + angle + ", velocity " + velocity);
+            }
+        }
+    }
+
+    @Test
+    void linearMatchesInverseDynamics() {
+        SimpleMatrix axis = vector(0.6, 0.0, 0.8);
+        LinearMechanism<configBase, inputBase, requestBase> elevator = track(new LinearMechanism<>(
+                "Elevator", properties(5.0, 0.0, 0.0, 0.2, 0.0), axis, vector(0.0, 0.0, 0.0)));
+        InverseDynamics dynamics = new InverseDynamics(List.of(elevator), new int[] {-1});
+        dynamics.update();
+        double[] effort = new double[1];
+
+        for (double position : new double[] {0.0, 0.4, 1.1}) {
+            for (double velocity : VELOCITIES) {
+                for (double acceleration : new double[] {-2.0, 0.0, 4.0}) {
+                    elevator.setCurrentPosition(position);
+                    elevator.setVelocity(velocity);
+                    elevator.setAcceleration(acceleration);
+                    dynamics.calculate(new double[] {position}, new double[] {velocity},
+                            new double[] {acceleration}, effort);
+
+                    assertEquals(effort[0] + FRICTION * velocity,
+                            project(elevator.getFeedforward(null), axis), EPSILON,
+                            "position " + position + ", velocity " + velocity
+                                    + ", acceleration " + acceleration);
+                }
+            }
+        }
+    }
+
+    private static double project(SimpleMatrix feedforward, SimpleMatrix axis) {
+        return feedforward.dot(axis) / axis.normF();
+    }
+
+    private <T extends Mechanism<?, ?, ?>> T track(T mechanism) {
+        created.add(mechanism);
+        return mechanism;
+    }
+
+    private static physicalProperties properties(double mass, double x, double y, double z,
+            double inertia) {
+        return new physicalProperties(mass, vector(x, y, z),
+                new SimpleMatrix(3, 3, true, inertia, 0, 0, 0, inertia, 0, 0, 0, inertia),
+                Optional.empty());
+    }
+
+    private static SimpleMatrix vector(double x, double y, double z) {
+        return new SimpleMatrix(3, 1, true, x, y, z);
+    }
+}